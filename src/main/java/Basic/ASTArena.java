@@ -0,0 +1,377 @@
+package Basic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/// Компактное представление AST: узлы лежат в примитивных массивах, а не в графе объектов.
+/// У узла с номером i: вид kinds[i] (как ASTNodes.Node.kind), операция ops[i], три ячейки slots[3i..3i+2]
+/// (номера детей, -1 - нет ребенка, или значение литерала) и смещение в коде offsets[i]
+/// (-1 - позиции нет). Списки (операторы блока, аргументы, элементы массива, части for)
+/// лежат в lists: по ссылке ref - длина lists[ref], затем номера узлов.
+/// Строки (имена, длинные числа) хранятся по одному разу в strings.
+/// Строка и столбец восстанавливаются по смещению через таблицу начал строк lineStarts.
+///
+/// Проходы по ASTNodes работают через tree(): он собирает обычные узлы из арены.
+/// IdNode.ind в арене не хранится: слоты переменных раздает SemanticCheck своего CompilationContext.
+public class ASTArena {
+    public static final int NONE = -1;//Нет ребенка или позиции
+
+    byte[] kinds;
+    byte[] ops;//BinOp - ordinal типа токена, составные присваивания - символ операции
+    int[] slots;
+    int[] offsets;
+    int[] lists;
+    String[] strings;
+    int[] lineStarts;
+    int size;
+    int listSize;
+    int stringCount;
+    int root = NONE;
+
+    ASTArena(int capacity, int[] lineStarts) {
+        kinds = new byte[capacity];
+        ops = new byte[capacity];
+        slots = new int[capacity * 3];
+        offsets = new int[capacity];
+        lists = new int[Math.max(capacity / 2, 16)];
+        strings = new String[16];
+        this.lineStarts = lineStarts;
+    }
+
+    /// Переложить дерево в арену. lines - строки кода, по которому построено дерево
+    public static ASTArena of(ASTNodes.StatementNode root, LineIndex lines) throws Exception {
+        var lineStarts = new int[lines.lineCount()];
+        for (int i = 0; i < lineStarts.length; i++)
+            lineStarts[i] = lines.lineStart(i + 1);
+        var arena = new ASTArena(256, lineStarts);
+        arena.root = root == null ? NONE : arena.new Builder().build(root);
+        arena.trim();
+        return arena;
+    }
+
+    /// Обрезать массивы до занятой длины: арена дальше только читается
+    private void trim() {
+        kinds = Arrays.copyOf(kinds, size);
+        ops = Arrays.copyOf(ops, size);
+        slots = Arrays.copyOf(slots, size * 3);
+        offsets = Arrays.copyOf(offsets, size);
+        lists = Arrays.copyOf(lists, listSize);
+        strings = Arrays.copyOf(strings, stringCount);
+    }
+
+    public int size() { return size; }
+    public int root() { return root; }
+    public byte kind(int node) { return kinds[node]; }
+    public int op(int node) { return ops[node]; }
+    public int slot(int node, int k) { return slots[node * 3 + k]; }
+    public int offset(int node) { return offsets[node]; }
+    public String string(int index) { return strings[index]; }
+
+    /// Длина списка по ссылке ref и его i-й элемент
+    public int listLength(int ref) { return lists[ref]; }
+    public int listItem(int ref, int i) { return lists[ref + 1 + i]; }
+
+    /// Позиция по смещению, null для NONE
+    public Position position(int offset) {
+        if (offset == NONE)
+            return null;
+        int line = lineOf(offset);
+        return new Position(line + 1, offset - lineStarts[line] + 1);
+    }
+
+    /// Номер строки (с 0), в которой лежит смещение
+    private int lineOf(int offset) {
+        int found = Arrays.binarySearch(lineStarts, offset);
+        return found >= 0 ? found : -found - 2;
+    }
+
+    private int offsetOf(Position position) {
+        if (position == null)
+            return NONE;
+        return lineStarts[position.line - 1] + position.column - 1;
+    }
+
+    /// Примерный объем арены в байтах (массивы без заголовков, строки не считаются)
+    public long footprint() {
+        return kinds.length * 2L + (slots.length + offsets.length + lists.length + lineStarts.length) * 4L
+                + strings.length * 4L;
+    }
+
+    // Построение
+
+    private int add(byte kind, int op, int a, int b, int c, Position position) {
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            ops = Arrays.copyOf(ops, capacity);
+            slots = Arrays.copyOf(slots, capacity * 3);
+            offsets = Arrays.copyOf(offsets, capacity);
+        }
+        kinds[size] = kind;
+        ops[size] = (byte) op;
+        slots[size * 3] = a;
+        slots[size * 3 + 1] = b;
+        slots[size * 3 + 2] = c;
+        offsets[size] = offsetOf(position);
+        return size++;
+    }
+
+    private int list(int[] items, int count) {
+        while (listSize + count + 1 > lists.length)
+            lists = Arrays.copyOf(lists, lists.length * 2);
+        int ref = listSize;
+        lists[listSize++] = count;
+        System.arraycopy(items, 0, lists, listSize, count);
+        listSize += count;
+        return ref;
+    }
+
+    /// Узлы добавляются после своих детей, так что корень - последний.
+    /// Дерево обходится ASTWalker без рекурсии: номера собранных детей лежат в стеке values,
+    /// и leave снимает их в обратном порядке обхода. Имя вызова обходчик не посещает, его добавляет leave
+    private class Builder extends ASTWalker {
+        private final HashMap<String, Integer> stringIds = new HashMap<>();
+        private int[] values = new int[64];
+        private int count;
+
+        int build(ASTNodes.Node root) throws Exception {
+            walk(root);
+            return values[--count];
+        }
+
+        private void push(int node) {
+            if (count == values.length)
+                values = Arrays.copyOf(values, count * 2);
+            values[count++] = node;
+        }
+
+        /// Номер собранного ребенка child; пустой ребенок в стек не попадал
+        private int pop(ASTNodes.Node child) {
+            return child == null ? NONE : values[--count];
+        }
+
+        private int string(String value) {
+            return stringIds.computeIfAbsent(value, s -> {
+                if (stringCount == strings.length)
+                    strings = Arrays.copyOf(strings, stringCount * 2);
+                strings[stringCount] = s;
+                return stringCount++;
+            });
+        }
+
+        private int nodes(ArrayList<? extends ASTNodes.Node> nodes) {
+            if (nodes == null)
+                return NONE;
+            var items = new int[nodes.size()];
+            for (int i = items.length - 1; i >= 0; i--)
+                items[i] = pop(nodes.get(i));
+            return list(items, items.length);
+        }
+
+        private int id(ASTNodes.IdNode id) {
+            return id == null ? NONE : add(ASTNodes.ID, 0, string(id.name), id.nameId, NONE, id.position);
+        }
+
+        // Для узла такого вида (kind) в арене нет представления
+        private IllegalStateException unknownNode(ASTNodes.Node node) {
+            return new IllegalStateException("Узел " + node.getClass().getName() + " нельзя переложить в ASTArena");
+        }
+
+        @Override
+        protected void leave(ASTNodes.Node node) {
+            switch (node.kind) {
+                case ASTNodes.BIN_OP -> {
+                    var bin = (ASTNodes.BinOpNode) node;
+                    int right = pop(bin.right), left = pop(bin.left);
+                    push(add(ASTNodes.BIN_OP, bin.op.ordinal(), left, right, NONE, bin.position));
+                }
+                case ASTNodes.STATEMENT_LIST -> {
+                    var stl = (ASTNodes.StatementListNode) node;
+                    push(add(ASTNodes.STATEMENT_LIST, 0, nodes(stl.statements), NONE, NONE, stl.position));
+                }
+                case ASTNodes.EXPR_LIST -> {
+                    var exlist = (ASTNodes.ExprListNode) node;
+                    push(add(ASTNodes.EXPR_LIST, 0, nodes(exlist.lst), NONE, NONE, ((ASTNodes.Node) exlist).position));
+                }
+                case ASTNodes.INT -> {
+                    var n = (ASTNodes.IntNode) node;
+                    push(add(ASTNodes.INT, 0, n.value, NONE, NONE, n.position));
+                }
+                case ASTNodes.BIG_INT -> {
+                    var n = (ASTNodes.BigIntNode) node;
+                    push(add(ASTNodes.BIG_INT, 0, string(n.value), NONE, NONE, n.position));
+                }
+                case ASTNodes.DOUBLE -> {
+                    var d = (ASTNodes.DoubleNode) node;
+                    long bits = Double.doubleToRawLongBits(d.value);
+                    push(add(ASTNodes.DOUBLE, 0, (int) (bits >>> 32), (int) bits, NONE, d.position));
+                }
+                case ASTNodes.ID -> push(id((ASTNodes.IdNode) node));
+                case ASTNodes.ARRAY_ACCESS -> {
+                    var a = (ASTNodes.ArrayAccessNode) node;
+                    int index = pop(a.index), array = pop(a.array);
+                    push(add(ASTNodes.ARRAY_ACCESS, 0, array, index, NONE, a.position));
+                }
+                case ASTNodes.ARRAY_LITERAL -> {
+                    var a = (ASTNodes.ArrayLiteralNode) node;
+                    push(add(ASTNodes.ARRAY_LITERAL, 0, nodes(a.elements), NONE, NONE, a.position));
+                }
+                case ASTNodes.ARRAY_ASSIGN_OPERATION -> {
+                    var a = (ASTNodes.ArrayAssignOperationNode) node;
+                    int expr = pop(a.expr), index = pop(a.index), array = pop(a.array);
+                    push(add(ASTNodes.ARRAY_ASSIGN_OPERATION, a.op, array, index, expr, a.position));
+                }
+                case ASTNodes.ARRAY_ASSIGN -> {
+                    var a = (ASTNodes.ArrayAssignNode) node;
+                    int expr = pop(a.expr), index = pop(a.index), array = pop(a.array);
+                    push(add(ASTNodes.ARRAY_ASSIGN, 0, array, index, expr, a.position));
+                }
+                case ASTNodes.ARRAY_DECLARATION -> {
+                    var a = (ASTNodes.ArrayDeclarationNode) node;
+                    int elements = nodes(a.initialElements), length = pop(a.size), id = pop(a.id);
+                    push(add(ASTNodes.ARRAY_DECLARATION, 0, id, length, elements, a.position));
+                }
+                case ASTNodes.ASSIGN -> {
+                    var ass = (ASTNodes.AssignNode) node;
+                    int id = pop(ass.id), expr = pop(ass.expr);//Выражение обходится раньше имени
+                    push(add(ASTNodes.ASSIGN, 0, id, expr, NONE, ass.position));
+                }
+                case ASTNodes.ASSIGN_OPERATION -> {
+                    var ass = (ASTNodes.AssignOperationNode) node;
+                    int id = pop(ass.id), expr = pop(ass.expr);
+                    push(add(ASTNodes.ASSIGN_OPERATION, ass.op, id, expr, NONE, ass.position));
+                }
+                case ASTNodes.IF -> {
+                    var ifn = (ASTNodes.IfNode) node;
+                    int elseif = pop(ifn.elseif), then = pop(ifn.then), cond = pop(ifn.cond);
+                    push(add(ASTNodes.IF, 0, cond, then, elseif, ifn.position));
+                }
+                case ASTNodes.WHILE -> {
+                    var whl = (ASTNodes.WhileNode) node;
+                    int stat = pop(whl.stat), cond = pop(whl.cond);
+                    push(add(ASTNodes.WHILE, 0, cond, stat, NONE, whl.position));
+                }
+                case ASTNodes.FOR -> {
+                    var forn = (ASTNodes.ForNode) node;
+                    int increment = pop(forn.increment), body = pop(forn.body);
+                    int condition = pop(forn.condition), start = pop(forn.start);
+                    var parts = new int[]{start, condition, increment, body};
+                    push(add(ASTNodes.FOR, 0, list(parts, parts.length), NONE, NONE, forn.position));
+                }
+                case ASTNodes.PROC_CALL -> {
+                    var p = (ASTNodes.ProcCallNode) node;
+                    int pars = pop(p.pars);
+                    push(add(ASTNodes.PROC_CALL, 0, id(p.name), pars, NONE, p.position));
+                }
+                case ASTNodes.FUNC_CALL -> {
+                    var f = (ASTNodes.FuncCallNode) node;
+                    int pars = pop(f.pars);
+                    push(add(ASTNodes.FUNC_CALL, 0, id(f.name), pars, NONE, f.position));
+                }
+                default -> throw unknownNode(node);
+            }
+        }
+    }
+
+    // Обратно в ASTNodes
+
+    /// Дерево ASTNodes, равное исходному, для проходов IVisitor/IVisitorP.
+    /// Дети в арене лежат раньше родителей, поэтому узлы собираются одним проходом по номерам,
+    /// без рекурсии, а строка позиции ищется от строки предыдущего узла: узлы идут почти по порядку текста
+    public ASTNodes.StatementNode tree() {
+        if (root == NONE)
+            return null;
+        var built = new ASTNodes.Node[root + 1];
+        int line = 0;
+        for (int node = 0; node <= root; node++) {
+            int offset = offsets[node];
+            Position position = null;
+            if (offset != NONE) {
+                if (offset < lineStarts[line] || line + 1 < lineStarts.length && offset >= lineStarts[line + 1])
+                    line = lineOf(offset);
+                position = new Position(line + 1, offset - lineStarts[line] + 1);
+            }
+            built[node] = node(node, position, built);
+        }
+        return (ASTNodes.StatementNode) built[root];
+    }
+
+    /// Собрать узел node; его дети уже собраны в built
+    private ASTNodes.Node node(int node, Position position, ASTNodes.Node[] built) {
+        int a = slots[node * 3], b = slots[node * 3 + 1], c = slots[node * 3 + 2];
+        switch (kinds[node]) {
+            case ASTNodes.STATEMENT_LIST: {
+                var stl = new ASTNodes.StatementListNode();
+                stl.statements.ensureCapacity(lists[a]);
+                for (int i = 0; i < lists[a]; i++)
+                    stl.add((ASTNodes.StatementNode) child(built, lists[a + 1 + i]));
+                stl.position = position;
+                return stl;
+            }
+            case ASTNodes.EXPR_LIST: {
+                var exlist = new ASTNodes.ExprListNode();
+                exlist.lst.ensureCapacity(lists[a]);
+                for (int i = 0; i < lists[a]; i++)
+                    exlist.add(expr(built, lists[a + 1 + i]));
+                ((ASTNodes.Node) exlist).position = position;
+                return exlist;
+            }
+            case ASTNodes.BIN_OP: {
+                var left = expr(built, a);
+                // Парсер отдает BinOpNode объект позиции левого операнда; так и оставляем
+                if (left != null && offsets[node] == offsets[a])
+                    position = left.position;
+                return new ASTNodes.BinOpNode(left, expr(built, b), LexerUnit.TokenTypes[ops[node]], position);
+            }
+            case ASTNodes.INT:
+                return new ASTNodes.IntNode(a, position);
+            case ASTNodes.DOUBLE:
+                return new ASTNodes.DoubleNode(Double.longBitsToDouble((long) a << 32 | b & 0xFFFFFFFFL), position);
+            case ASTNodes.BIG_INT:
+                return new ASTNodes.BigIntNode(strings[a], position);
+            case ASTNodes.ID:
+                return new ASTNodes.IdNode(strings[a], b, position);
+            case ASTNodes.ARRAY_ACCESS:
+                return new ASTNodes.ArrayAccessNode(expr(built, a), expr(built, b), position);
+            case ASTNodes.ARRAY_LITERAL:
+                return new ASTNodes.ArrayLiteralNode(exprs(built, a), position);
+            case ASTNodes.ARRAY_ASSIGN:
+                return new ASTNodes.ArrayAssignNode(expr(built, a), expr(built, b), expr(built, c), position);
+            case ASTNodes.ARRAY_ASSIGN_OPERATION:
+                return new ASTNodes.ArrayAssignOperationNode(expr(built, a), expr(built, b), expr(built, c), (char) ops[node], position);
+            case ASTNodes.ARRAY_DECLARATION:
+                return new ASTNodes.ArrayDeclarationNode((ASTNodes.IdNode) child(built, a), expr(built, b), exprs(built, c), position);
+            case ASTNodes.ASSIGN:
+                return new ASTNodes.AssignNode((ASTNodes.IdNode) child(built, a), expr(built, b), position);
+            case ASTNodes.ASSIGN_OPERATION:
+                return new ASTNodes.AssignOperationNode((ASTNodes.IdNode) child(built, a), expr(built, b), (char) ops[node], position);
+            case ASTNodes.IF:
+                return new ASTNodes.IfNode(expr(built, a), statement(built, b), statement(built, c), position);
+            case ASTNodes.WHILE:
+                return new ASTNodes.WhileNode(expr(built, a), statement(built, b), position);
+            case ASTNodes.FOR:
+                return new ASTNodes.ForNode(statement(built, lists[a + 1]), expr(built, lists[a + 2]),
+                        statement(built, lists[a + 3]), statement(built, lists[a + 4]), position);
+            case ASTNodes.PROC_CALL:
+                return new ASTNodes.ProcCallNode((ASTNodes.IdNode) child(built, a), (ASTNodes.ExprListNode) child(built, b), position);
+            case ASTNodes.FUNC_CALL:
+                return new ASTNodes.FuncCallNode((ASTNodes.IdNode) child(built, a), (ASTNodes.ExprListNode) child(built, b), position);
+            default:
+                throw new IllegalStateException("Неизвестный вид узла " + kinds[node]);
+        }
+    }
+
+    private static ASTNodes.Node child(ASTNodes.Node[] built, int node) { return node == NONE ? null : built[node]; }
+    private static ASTNodes.ExprNode expr(ASTNodes.Node[] built, int node) { return (ASTNodes.ExprNode) child(built, node); }
+    private static ASTNodes.StatementNode statement(ASTNodes.Node[] built, int node) { return (ASTNodes.StatementNode) child(built, node); }
+
+    private ArrayList<ASTNodes.ExprNode> exprs(ASTNodes.Node[] built, int ref) {
+        if (ref == NONE)
+            return null;
+        var elements = new ArrayList<ASTNodes.ExprNode>(lists[ref]);
+        for (int i = 0; i < lists[ref]; i++)
+            elements.add(expr(built, lists[ref + 1 + i]));
+        return elements;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,233 @@
+package Basic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+
+/// Кэш разобранных программ на диске: арена (ASTArena) в файле <SHA-256 текста>.ezast.
+/// Загрузка из кэша обходится без лексера и парсера: файл отображается в память,
+/// и массивы арены копируются из него целиком. Вместе с деревом сохраняются позиции.
+/// Результаты семантической проверки (IdNode.ind, символы, типы) не сохраняются: они принадлежат
+/// одному CompilationContext, поэтому дерево из кэша, как и разобранное, проверяется заново.
+///
+/// Формат (числа big-endian):
+///   int MAGIC, int VERSION, int size, listSize, stringCount, lineCount, root,
+///   byte kinds[size], byte ops[size], выравнивание нулями до 4 байт,
+///   int slots[3 * size], int offsets[size], int lists[listSize], int lineStarts[lineCount],
+///   строки: int длина в байтах, UTF-8.
+/// Файл другой версии или испорченный считается промахом.
+///
+/// Каталог ограничен по объему: после записи самые давно использованные файлы удаляются,
+/// пока их общий размер больше limit. Загрузка из кэша обновляет время изменения файла.
+public class ASTCache {
+    public static final int MAGIC = 0x455A4153;//"EZAS"
+    public static final int VERSION = 2;//Менять при любом изменении формата или смысла полей арены
+    private static final int HEADER = 7 * Integer.BYTES;
+
+    public static final long DEFAULT_LIMIT = 256L << 20;//Байт на каталог
+
+    private final Path directory;
+    private final long limit;
+
+    public ASTCache(Path directory) {
+        this(directory, DEFAULT_LIMIT);
+    }
+
+    public ASTCache(Path directory, long limit) {
+        this.directory = directory;
+        this.limit = limit;
+    }
+
+    /// Ключ кэша: SHA-256 текста программы
+    public static String key(CharSequence code) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(code.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Path pathOf(CharSequence code) {
+        return directory.resolve(key(code) + ".ezast");
+    }
+
+    /// Дерево программы code из кэша или null, если его там нет
+    public ASTNodes.StatementNode load(CharSequence code) throws IOException {
+        return load(pathOf(code));
+    }
+
+    private static ASTNodes.StatementNode load(Path file) throws IOException {
+        if (!Files.isRegularFile(file))
+            return null;
+        var arena = read(file);
+        if (arena == null)
+            return null;
+        ASTNodes.StatementNode tree;
+        try {
+            tree = arena.tree();
+        } catch (RuntimeException e) {
+            return null;//Размеры верны, но номера узлов испорчены
+        }
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));//Файл использован
+        return tree;
+    }
+
+    /// Сохранить дерево программы code; lines - строки code
+    public void store(CharSequence code, ASTNodes.StatementNode tree, LineIndex lines) throws Exception {
+        store(pathOf(code), tree, lines);
+    }
+
+    private void store(Path file, ASTNodes.StatementNode tree, LineIndex lines) throws Exception {
+        Files.createDirectories(directory);
+        write(ASTArena.of(tree, lines), file);
+        evict();
+    }
+
+    /// Удалять самые давно использованные файлы кэша, пока их объем больше limit
+    private void evict() throws IOException {
+        record Entry(Path file, long size, long used) { }
+        var entries = new ArrayList<Entry>();
+        long total = 0;
+        try (var files = Files.newDirectoryStream(directory, "*.ezast")) {
+            for (var file : files) {
+                var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                entries.add(new Entry(file, attributes.size(), attributes.lastModifiedTime().toMillis()));
+                total += attributes.size();
+            }
+        }
+        if (total <= limit)
+            return;
+        entries.sort(Comparator.comparingLong(Entry::used));
+        for (var entry : entries) {
+            if (total <= limit)
+                break;
+            Files.deleteIfExists(entry.file());
+            total -= entry.size();
+        }
+    }
+
+    /// Дерево из кэша, а при промахе - разбор и сохранение в кэш.
+    /// Кэш только ускоряет разбор: если файл не читается или не пишется, программа просто разбирается
+    public ASTNodes.StatementNode parse(CharSequence code) throws Exception {
+        var file = pathOf(code);//SHA-256 всего текста считается один раз
+        try {
+            var tree = load(file);
+            if (tree != null)
+                return tree;
+        } catch (IOException e) {
+            // Разберем заново
+        }
+        var lexer = new LexerUnit.Lexer(code);
+        var tree = new Parser(lexer).mainProgram();
+        try {
+            store(file, tree, lexer.lineIndex());
+        } catch (IOException e) {
+            // Без кэша
+        }
+        return tree;
+    }
+
+    public static void write(ASTArena arena, Path file) throws IOException {
+        var strings = new byte[arena.stringCount][];
+        int stringBytes = 0;
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = arena.strings[i].getBytes(StandardCharsets.UTF_8);
+            stringBytes += Integer.BYTES + strings[i].length;
+        }
+        int size = arena.size;
+        int intsStart = align(HEADER + 2 * size);
+        long length = intsStart + (4L * size + arena.listSize + arena.lineStarts.length) * Integer.BYTES + stringBytes;
+        if (length > Integer.MAX_VALUE)
+            throw new IOException("Дерево слишком большое для кэша: " + length + " байт");
+
+        var buffer = ByteBuffer.allocate((int) length);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(arena.listSize)
+                .putInt(arena.stringCount).putInt(arena.lineStarts.length).putInt(arena.root);
+        buffer.put(arena.kinds, 0, size).put(arena.ops, 0, size);
+        buffer.position(intsStart);
+        var ints = buffer.asIntBuffer();
+        ints.put(arena.slots, 0, 3 * size).put(arena.offsets, 0, size)
+                .put(arena.lists, 0, arena.listSize).put(arena.lineStarts);
+        buffer.position(buffer.position() + ints.position() * Integer.BYTES);
+        for (var string : strings)
+            buffer.putInt(string.length).put(string);
+
+        // Сначала во временный файл: другой процесс не должен увидеть файл недописанным
+        var temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (var channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                buffer.flip();
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /// Арена из файла или null, если файл другой версии или испорчен
+    public static ASTArena read(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER || channel.size() > Integer.MAX_VALUE)
+                return null;
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                return null;
+            int size = buffer.getInt(), listSize = buffer.getInt(), stringCount = buffer.getInt();
+            int lineCount = buffer.getInt(), root = buffer.getInt();
+            if (size < 0 || listSize < 0 || stringCount < 0 || lineCount < 1 || root < ASTArena.NONE || root >= size)
+                return null;
+            // Размеры из заголовка проверяются по длине файла до выделения массивов под них
+            long needed = (HEADER + 2L * size + Integer.BYTES - 1 & -Integer.BYTES)
+                    + (4L * size + listSize + lineCount + stringCount) * Integer.BYTES;//Строки - хотя бы их длины
+            if (needed > channel.size())
+                return null;
+
+            var arena = new ASTArena(0, new int[lineCount]);
+            arena.kinds = new byte[size];
+            arena.ops = new byte[size];
+            arena.slots = new int[3 * size];
+            arena.offsets = new int[size];
+            arena.lists = new int[listSize];
+            arena.strings = new String[stringCount];
+            buffer.get(arena.kinds).get(arena.ops);
+            buffer.position(align(buffer.position()));
+            var ints = buffer.asIntBuffer();
+            ints.get(arena.slots).get(arena.offsets).get(arena.lists).get(arena.lineStarts);
+            buffer.position(buffer.position() + ints.position() * Integer.BYTES);
+            for (int i = 0; i < stringCount; i++) {
+                int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining())
+                    return null;
+                var bytes = new byte[length];
+                buffer.get(bytes);
+                arena.strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            arena.size = size;
+            arena.listSize = listSize;
+            arena.stringCount = stringCount;
+            arena.root = root;
+            return arena;
+        } catch (RuntimeException e) {
+            return null;//Обрезанный или испорченный файл
+        }
+    }
+
+    private static int align(int position) {
+        return (position + Integer.BYTES - 1) & -Integer.BYTES;
+    }
+}
@@ -1,11 +1,34 @@
 package Basic;
 
+import SemanticCheckLogic.SymbolTable;
+
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Dictionary;
 import java.util.Hashtable;
 
 public abstract class ASTNodes {
+    // Виды узлов (Node.kind): проходы ветвятся switch по виду вместо вызова visit/visitP
+    public static final byte STATEMENT_LIST = 0;
+    public static final byte EXPR_LIST = 1;
+    public static final byte BIN_OP = 2;
+    public static final byte INT = 3;
+    public static final byte DOUBLE = 4;
+    public static final byte BIG_INT = 5;
+    public static final byte ID = 6;
+    public static final byte ARRAY_ACCESS = 7;
+    public static final byte ARRAY_LITERAL = 8;
+    public static final byte ARRAY_ASSIGN = 9;
+    public static final byte ARRAY_ASSIGN_OPERATION = 10;
+    public static final byte ARRAY_DECLARATION = 11;
+    public static final byte ASSIGN = 12;
+    public static final byte ASSIGN_OPERATION = 13;
+    public static final byte IF = 14;
+    public static final byte WHILE = 15;
+    public static final byte FOR = 16;
+    public static final byte PROC_CALL = 17;
+    public static final byte FUNC_CALL = 18;
+
     public interface IVisitor<T>{
         T visitNode(Node bin)  throws Exception ;
         T visitExprNode(ExprNode bin) throws Exception;
@@ -57,13 +80,17 @@ public abstract class ASTNodes {
     }
     
     public static abstract class Node{
+        public final byte kind;
         public Position position;
+        protected Node(byte kind) { this.kind = kind; }
         public abstract <T> T visit(IVisitor<T> v) throws Exception ;
         public abstract void visitP(IVisitorP v) throws Exception;
     }
 
     public static abstract class ExprNode extends Node{
         public Position position;
+        public SymbolTable.SemanticType type; // тип выражения (CalcTypes.calcType), null - еще не вычислен
+        protected ExprNode(byte kind) { super(kind); }
         @Override
         public <T> T visit(IVisitor<T> v) throws Exception { return v.visitExprNode(this); };
         @Override
@@ -72,6 +99,7 @@ public abstract class ASTNodes {
 
     public static abstract class StatementNode extends Node{
         public Position position;
+        protected StatementNode(byte kind) { super(kind); }
         @Override
         public <T> T visit(IVisitor<T> v) throws Exception { return v.visitStatementNode(this); };
         @Override
@@ -87,6 +115,7 @@ public abstract class ASTNodes {
         public LexerUnit.TokenType op;
 
         public BinOpNode(ExprNode left, ExprNode right, LexerUnit.TokenType op, Position position) {
+            super(BIN_OP);
             this.left = left;
             this.right = right;
             this.op = op;
@@ -123,6 +152,7 @@ public abstract class ASTNodes {
 
     public static class StatementListNode extends StatementNode{
         public ArrayList<StatementNode> statements = new ArrayList<StatementNode>();
+        public StatementListNode() { super(STATEMENT_LIST); }
         public void add(StatementNode statement){ statements.add(statement); }
         @Override
         public <T> T visit(IVisitor<T> v) throws Exception { return v.visitStatementList(this); };
@@ -144,6 +174,7 @@ public abstract class ASTNodes {
 
     public static class ExprListNode extends Node{
         public ArrayList<ExprNode> lst = new ArrayList<ExprNode>();
+        public ExprListNode() { super(EXPR_LIST); }
         public void add(ExprNode expr){ lst.add(expr); }
         @Override
         public <T> T visit(IVisitor<T> v) throws Exception { return v.visitExprList(this); };
@@ -167,11 +198,12 @@ public abstract class ASTNodes {
         public Position position;
 
         public IntNode(int value, Position position) {
+            super(INT);
             this.value = value;
             this.position = position;
         }
 
-        public IntNode(int value) { this.value = value; }
+        public IntNode(int value) { super(INT); this.value = value; }
 
         @Override
         public <T> T visit(IVisitor<T> v) throws Exception { return v.visitInt(this); }
@@ -188,11 +220,12 @@ public abstract class ASTNodes {
         public Position position;
 
         public DoubleNode(double value, Position position) {
+            super(DOUBLE);
             this.value = value;
             this.position = position;
         }
 
-        public DoubleNode(double value) throws Exception { this.value = value; }
+        public DoubleNode(double value) throws Exception { super(DOUBLE); this.value = value; }
 
         @Override
         public <T> T visit(IVisitor<T> v) throws Exception { return v.visitDouble(this); }
@@ -209,11 +242,12 @@ public abstract class ASTNodes {
         public Position position;
 
         public BigIntNode(String value, Position position) {
+            super(BIG_INT);
             this.value = value;
             this.position = position;
         }
 
-        public BigIntNode(String value) throws Exception { this.value = value; }
+        public BigIntNode(String value) throws Exception { super(BIG_INT); this.value = value; }
 
         @Override
         public <T> T visit(IVisitor<T> v) throws Exception { return v.visitBigInt(this); }
@@ -227,14 +261,24 @@ public abstract class ASTNodes {
 
     public static class IdNode extends ExprNode{
         public String name;
-        public int ind; // индекс в таблице varValues
+        public int nameId = -1; // номер имени в NameTable лексера, -1 если узел создан не парсером
+        public int ind; // индекс в таблице varValues (слот переменной, выданный CompilationContext)
+        public SymbolTable.SymbolInfo symbol; // символ, найденный SemanticCheck; null - узел еще не проверен
 
         public IdNode(String name, Position position) {
+            super(ID);
+            this.name = name;
+            this.position = position;
+        }
+
+        public IdNode(String name, int nameId, Position position) {
+            super(ID);
             this.name = name;
+            this.nameId = nameId;
             this.position = position;
         }
 
-        public IdNode(String name) { this.name = name; }
+        public IdNode(String name) { super(ID); this.name = name; }
 
         @Override
         public <T> T visit(IVisitor<T> v) throws Exception { return v.visitId(this); }
@@ -252,6 +296,7 @@ public abstract class ASTNodes {
         public ExprNode index;
 
         public ArrayAccessNode(ExprNode array, ExprNode index,  Position position) {
+            super(ARRAY_ACCESS);
             this.array = array;
             this.index = index;
             this.position = position;
@@ -273,6 +318,7 @@ public abstract class ASTNodes {
         public ArrayList<ExprNode> elements = new ArrayList<ExprNode>();
 
         public ArrayLiteralNode(ArrayList<ExprNode> elements, Position position) {
+            super(ARRAY_LITERAL);
             this.elements = elements;
             this.position = position;
         }
@@ -302,6 +348,7 @@ public abstract class ASTNodes {
         public ExprNode expr;
 
         public ArrayAssignNode(ExprNode array, ExprNode index, ExprNode expr, Position position) {
+            super(ARRAY_ASSIGN);
             this.array = array;
             this.index = index;
             this.expr = expr;
@@ -328,6 +375,7 @@ public abstract class ASTNodes {
         public char op;
 
         public ArrayAssignOperationNode(ExprNode array, ExprNode index, ExprNode expr, char op, Position position) {
+            super(ARRAY_ASSIGN_OPERATION);
             this.array = array;
             this.index = index;
             this.expr = expr;
@@ -354,6 +402,7 @@ public abstract class ASTNodes {
         public ArrayList<ExprNode> initialElements = new ArrayList<ExprNode>();
 
         public ArrayDeclarationNode(IdNode id, ExprNode size,  ArrayList<ExprNode> initialElements, Position position) {
+            super(ARRAY_DECLARATION);
             this.id = id;
             this.size = size;
             this.initialElements = initialElements;
@@ -379,6 +428,7 @@ public abstract class ASTNodes {
         public ExprNode expr;
 
         public AssignNode(IdNode id, ExprNode expr, Position position) {
+            super(ASSIGN);
             this.id = id;
             this.expr = expr;
             this.position = position;
@@ -401,6 +451,7 @@ public abstract class ASTNodes {
         public char op;
 
         public AssignOperationNode(IdNode id, ExprNode expr, char op, Position position) {
+            super(ASSIGN_OPERATION);
             this.id = id;
             this.expr = expr;
             this.op = op;
@@ -425,6 +476,7 @@ public abstract class ASTNodes {
         public StatementNode elseif;
 
         public IfNode(ExprNode cond, StatementNode then, StatementNode elseif, Position position) {
+            super(IF);
             this.cond = cond;
             this.then = then;
             this.elseif = elseif;
@@ -454,6 +506,7 @@ public abstract class ASTNodes {
         public StatementNode increment;
 
         public ForNode(StatementNode start, ExprNode condition, StatementNode increment, StatementNode body, Position position) {
+            super(FOR);
             this.condition = condition;
             this.body = body;
             this.start = start;
@@ -477,6 +530,7 @@ public abstract class ASTNodes {
         public StatementNode stat;
 
         public WhileNode(ExprNode cond, StatementNode stat, Position position) {
+            super(WHILE);
             this.cond = cond;
             this.stat = stat;
             this.position = position;
@@ -499,6 +553,7 @@ public abstract class ASTNodes {
         public ExprListNode pars;
 
         public ProcCallNode(IdNode name, ExprListNode pars, Position position) {
+            super(PROC_CALL);
             this.name = name;
             this.pars = pars;
             this.position = position;
@@ -522,6 +577,7 @@ public abstract class ASTNodes {
         public ExprListNode pars;
 
         public FuncCallNode(IdNode name, ExprListNode pars, Position position) {
+            super(FUNC_CALL);
             this.name = name;
             this.pars = pars;
             this.position = position;
@@ -0,0 +1,94 @@
+package Basic;
+
+import java.util.Arrays;
+
+/// Обход выражения, который пересобирает его снизу вверх: результат каждого поддерева
+/// кладется на стек values, а родитель забирает результаты детей на место старых детей.
+/// Бинарные операции, доступ к массиву, списки параметров, литералы массивов и вызовы
+/// пересобираются здесь; наследник в replace решает только, чем заменить узел, дети
+/// которого уже заменены. Объявление массива не трогается целиком.
+///
+/// У результата может быть признак, смысл которого задает наследник (у CommonSubexpressions -
+/// чистота): replace ставит его через mark() и узнает, что признак есть у всех детей узла.
+public abstract class ASTRewriter extends ASTWalker {
+    private ASTNodes.Node[] values = new ASTNodes.Node[64];
+    private boolean[] marks = new boolean[64];
+    private int count;
+    private boolean marked;//Признак результата текущего replace
+
+    /// Узел, которым заменить node, когда его дети уже заменены; childrenMarked - признак есть у всех детей
+    protected abstract ASTNodes.Node replace(ASTNodes.Node node, boolean childrenMarked) throws Exception;
+
+    /// Поставить признак результату текущего replace
+    protected void mark() {
+        marked = true;
+    }
+
+    /// Переписать выражение и вернуть его новый корень
+    protected ASTNodes.ExprNode expr(ASTNodes.ExprNode expr) throws Exception {
+        if (expr == null)
+            return null;
+        walk(expr);
+        return (ASTNodes.ExprNode) values[--count];
+    }
+
+    @Override
+    protected final boolean enter(ASTNodes.Node node) {
+        if (node.kind != ASTNodes.ARRAY_DECLARATION)
+            return true;
+        push(node, false);//Объявление массива не трогаем целиком
+        return false;
+    }
+
+    /// Дети узла уже обработаны и лежат на вершине values в прямом порядке
+    @Override
+    protected final void leave(ASTNodes.Node node) throws Exception {
+        boolean childrenMarked = true;
+        switch (node.kind) {
+            case ASTNodes.BIN_OP -> {
+                var bin = (ASTNodes.BinOpNode) node;
+                childrenMarked = marks[count - 2] && marks[count - 1];
+                bin.right = (ASTNodes.ExprNode) values[--count];
+                bin.left = (ASTNodes.ExprNode) values[--count];
+            }
+            case ASTNodes.ARRAY_ACCESS -> {
+                var a = (ASTNodes.ArrayAccessNode) node;
+                childrenMarked = marks[count - 2] && marks[count - 1];
+                a.index = (ASTNodes.ExprNode) values[--count];
+                a.array = (ASTNodes.ExprNode) values[--count];
+            }
+            case ASTNodes.EXPR_LIST -> {
+                var lst = ((ASTNodes.ExprListNode) node).lst;
+                for (int i = lst.size() - 1; i >= 0; i--) {
+                    childrenMarked &= marks[--count];
+                    lst.set(i, (ASTNodes.ExprNode) values[count]);
+                }
+            }
+            case ASTNodes.ARRAY_LITERAL -> {
+                var elements = ((ASTNodes.ArrayLiteralNode) node).elements;
+                for (int i = elements.size() - 1; i >= 0; i--) {
+                    childrenMarked &= marks[--count];
+                    elements.set(i, (ASTNodes.ExprNode) values[count]);
+                }
+            }
+            case ASTNodes.FUNC_CALL -> {
+                childrenMarked = marks[--count];
+                ((ASTNodes.FuncCallNode) node).pars = (ASTNodes.ExprListNode) values[count];
+            }
+            default -> { }
+        }
+        marked = false;
+        var result = replace(node, childrenMarked);
+        push(result, marked);
+    }
+
+    private void push(ASTNodes.Node node, boolean mark) {
+        if (count == values.length) {
+            values = Arrays.copyOf(values, count * 2);
+            marks = Arrays.copyOf(marks, count * 2);
+        }
+        values[count] = node;
+        marks[count] = mark;
+        count++;
+    }
+}
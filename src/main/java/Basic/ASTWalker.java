@@ -0,0 +1,128 @@
+package Basic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/// Обход AST без рекурсии и без visit/visitP: узлы лежат на явном стеке,
+/// а дети узла перечисляются switch по node.kind. Глубина дерева не ограничена стеком потока.
+/// Дети обходятся в том же порядке, что и в SemanticCheckLogic.AutoVisitorUnit:
+/// у присваиваний сначала выражение, у for - start, condition, body, increment,
+/// у вызовов - только параметры (имя функции не обходится). Пустые (null) дети пропускаются.
+public abstract class ASTWalker {
+    private ASTNodes.Node[] stack = new ASTNodes.Node[64];
+    private boolean[] leaving = new boolean[64];//true - дети узла уже обойдены
+    private int top;
+
+    /// Вызывается до обхода детей узла; false - детей не обходить (и leave не вызывать)
+    protected boolean enter(ASTNodes.Node node) throws Exception { return true; }
+
+    /// Вызывается после обхода детей узла
+    protected void leave(ASTNodes.Node node) throws Exception { }
+
+    /// Обойти поддерево root. Из enter/leave можно обойти другое поддерево тем же обходчиком
+    public void walk(ASTNodes.Node root) throws Exception {
+        int base = top;
+        try {
+            push(root, false);
+            while (top > base) {
+                var node = stack[--top];
+                stack[top] = null;
+                if (leaving[top]) {
+                    leave(node);
+                } else if (enter(node)) {
+                    push(node, true);
+                    pushChildren(node);
+                }
+            }
+        } finally {
+            Arrays.fill(stack, base, top, null);
+            top = base;
+        }
+    }
+
+    private void push(ASTNodes.Node node, boolean leave) {
+        if (node == null)
+            return;
+        if (top == stack.length) {
+            stack = Arrays.copyOf(stack, top * 2);
+            leaving = Arrays.copyOf(leaving, top * 2);
+        }
+        stack[top] = node;
+        leaving[top] = leave;
+        top++;
+    }
+
+    private void pushAll(ArrayList<? extends ASTNodes.Node> nodes) {
+        if (nodes != null)
+            for (int i = nodes.size() - 1; i >= 0; i--)
+                push(nodes.get(i), false);
+    }
+
+    /// Дети кладутся в обратном порядке, чтобы первый оказался на вершине стека
+    private void pushChildren(ASTNodes.Node node) {
+        switch (node.kind) {
+            case ASTNodes.STATEMENT_LIST -> pushAll(((ASTNodes.StatementListNode) node).statements);
+            case ASTNodes.EXPR_LIST -> pushAll(((ASTNodes.ExprListNode) node).lst);
+            case ASTNodes.BIN_OP -> {
+                var bin = (ASTNodes.BinOpNode) node;
+                push(bin.right, false);
+                push(bin.left, false);
+            }
+            case ASTNodes.ARRAY_ACCESS -> {
+                var a = (ASTNodes.ArrayAccessNode) node;
+                push(a.index, false);
+                push(a.array, false);
+            }
+            case ASTNodes.ARRAY_LITERAL -> pushAll(((ASTNodes.ArrayLiteralNode) node).elements);
+            case ASTNodes.ARRAY_ASSIGN -> {
+                var a = (ASTNodes.ArrayAssignNode) node;
+                push(a.expr, false);
+                push(a.index, false);
+                push(a.array, false);
+            }
+            case ASTNodes.ARRAY_ASSIGN_OPERATION -> {
+                var a = (ASTNodes.ArrayAssignOperationNode) node;
+                push(a.expr, false);
+                push(a.index, false);
+                push(a.array, false);
+            }
+            case ASTNodes.ARRAY_DECLARATION -> {
+                var a = (ASTNodes.ArrayDeclarationNode) node;
+                pushAll(a.initialElements);
+                push(a.size, false);
+                push(a.id, false);
+            }
+            case ASTNodes.ASSIGN -> {
+                var ass = (ASTNodes.AssignNode) node;
+                push(ass.id, false);
+                push(ass.expr, false);
+            }
+            case ASTNodes.ASSIGN_OPERATION -> {
+                var ass = (ASTNodes.AssignOperationNode) node;
+                push(ass.id, false);
+                push(ass.expr, false);
+            }
+            case ASTNodes.IF -> {
+                var ifn = (ASTNodes.IfNode) node;
+                push(ifn.elseif, false);
+                push(ifn.then, false);
+                push(ifn.cond, false);
+            }
+            case ASTNodes.WHILE -> {
+                var whl = (ASTNodes.WhileNode) node;
+                push(whl.stat, false);
+                push(whl.cond, false);
+            }
+            case ASTNodes.FOR -> {
+                var forn = (ASTNodes.ForNode) node;
+                push(forn.increment, false);
+                push(forn.body, false);
+                push(forn.condition, false);
+                push(forn.start, false);
+            }
+            case ASTNodes.PROC_CALL -> push(((ASTNodes.ProcCallNode) node).pars, false);
+            case ASTNodes.FUNC_CALL -> push(((ASTNodes.FuncCallNode) node).pars, false);
+            default -> { }//Литералы и идентификаторы
+        }
+    }
+}
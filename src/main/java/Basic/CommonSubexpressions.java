@@ -0,0 +1,130 @@
+package Basic;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/// Хеш-консинг выражений: структурно равные чистые подвыражения программы заменяются
+/// одним общим узлом, и дерево выражений становится DAG. Чистые - литералы, идентификаторы,
+/// бинарные операции и доступ к элементу массива над чистыми операндами. Вызовы функций,
+/// литералы и объявления массивов не объединяются.
+///
+/// Идентификаторы равны, если равны имя и ind, поэтому проход идет после семантической проверки
+/// (где его запускать, см. IDEController.handleRun). Трансляторы находят общие узлы выражения через sharedIn и вычисляют каждый
+/// один раз за вычисление этого выражения.
+public class CommonSubexpressions extends ASTRewriter {
+    private record Key(byte kind, Object op, Object a, Object b) {}
+
+    private final HashMap<Key, ASTNodes.ExprNode> table = new HashMap<>();
+
+    public int nodes;//Сколько чистых узлов просмотрено
+    public int merged;//Сколько из них заменено ранее встреченными равными
+
+    /// Объединить общие подвыражения во всех выражениях оператора (и вложенных операторов)
+    public void share(ASTNodes.StatementNode node) throws Exception {
+        switch (node.kind) {
+            case ASTNodes.STATEMENT_LIST -> {
+                for (var statement : ((ASTNodes.StatementListNode) node).statements)
+                    share(statement);
+            }
+            case ASTNodes.ASSIGN -> {
+                var ass = (ASTNodes.AssignNode) node;
+                ass.expr = expr(ass.expr);
+            }
+            case ASTNodes.ASSIGN_OPERATION -> {
+                var ass = (ASTNodes.AssignOperationNode) node;
+                ass.expr = expr(ass.expr);
+            }
+            case ASTNodes.ARRAY_ASSIGN -> {
+                var a = (ASTNodes.ArrayAssignNode) node;
+                a.array = expr(a.array);
+                a.index = expr(a.index);
+                a.expr = expr(a.expr);
+            }
+            case ASTNodes.ARRAY_ASSIGN_OPERATION -> {
+                var a = (ASTNodes.ArrayAssignOperationNode) node;
+                a.array = expr(a.array);
+                a.index = expr(a.index);
+                a.expr = expr(a.expr);
+            }
+            case ASTNodes.IF -> {
+                var ifn = (ASTNodes.IfNode) node;
+                ifn.cond = expr(ifn.cond);
+                share(ifn.then);
+                if (ifn.elseif != null)
+                    share(ifn.elseif);
+            }
+            case ASTNodes.WHILE -> {
+                var whl = (ASTNodes.WhileNode) node;
+                whl.cond = expr(whl.cond);
+                share(whl.stat);
+            }
+            case ASTNodes.FOR -> {
+                var forn = (ASTNodes.ForNode) node;
+                share(forn.start);
+                forn.condition = expr(forn.condition);
+                share(forn.increment);
+                share(forn.body);
+            }
+            case ASTNodes.PROC_CALL -> {
+                var pars = ((ASTNodes.ProcCallNode) node).pars.lst;
+                for (int i = 0; i < pars.size(); i++)
+                    pars.set(i, expr(pars.get(i)));
+            }
+            default -> { }
+        }
+    }
+
+    /// Чистые узлы заменяются общими; признак результата (mark) - чистота
+    @Override
+    protected ASTNodes.Node replace(ASTNodes.Node node, boolean childrenMarked) {
+        return switch (node.kind) {
+            case ASTNodes.INT -> canonical(node, new Key(ASTNodes.INT, null, ((ASTNodes.IntNode) node).value, null));
+            case ASTNodes.DOUBLE -> canonical(node, new Key(ASTNodes.DOUBLE, null,
+                    Double.doubleToLongBits(((ASTNodes.DoubleNode) node).value), null));
+            case ASTNodes.BIG_INT -> canonical(node, new Key(ASTNodes.BIG_INT, null, ((ASTNodes.BigIntNode) node).value, null));
+            case ASTNodes.ID -> {
+                var id = (ASTNodes.IdNode) node;
+                yield canonical(node, new Key(ASTNodes.ID, id.name, id.ind, null));
+            }
+            case ASTNodes.BIN_OP -> {
+                var bin = (ASTNodes.BinOpNode) node;
+                yield childrenMarked ? canonical(node, new Key(ASTNodes.BIN_OP, bin.op, bin.left, bin.right)) : node;
+            }
+            case ASTNodes.ARRAY_ACCESS -> {
+                var a = (ASTNodes.ArrayAccessNode) node;
+                yield childrenMarked ? canonical(node, new Key(ASTNodes.ARRAY_ACCESS, null, a.array, a.index)) : node;
+            }
+            default -> node;
+        };
+    }
+
+    private ASTNodes.Node canonical(ASTNodes.Node node, Key key) {
+        nodes++;
+        mark();
+        var existing = table.putIfAbsent(key, (ASTNodes.ExprNode) node);
+        if (existing != null && existing != node) {
+            merged++;
+            return existing;
+        }
+        return node;
+    }
+
+    /// Узлы операций (BinOp и доступ к массиву), на которые в выражении expr больше одной ссылки.
+    /// Их значение трансляторы вычисляют один раз за вычисление expr
+    public static Set<ASTNodes.ExprNode> sharedIn(ASTNodes.ExprNode expr) throws Exception {
+        var seen = Collections.newSetFromMap(new IdentityHashMap<ASTNodes.Node, Boolean>());
+        var shared = Collections.newSetFromMap(new IdentityHashMap<ASTNodes.ExprNode, Boolean>());
+        new ASTWalker() {
+            @Override
+            protected boolean enter(ASTNodes.Node node) {
+                if (node.kind != ASTNodes.BIN_OP && node.kind != ASTNodes.ARRAY_ACCESS || seen.add(node))
+                    return true;
+                shared.add((ASTNodes.ExprNode) node);
+                return false;//Поддерево уже обойдено при первой ссылке
+            }
+        }.walk(expr);
+        return shared;
+    }
+}
@@ -0,0 +1,293 @@
+package Basic;
+
+import SemanticCheckLogic.CompilationContext;
+import SemanticCheckLogic.SymbolTable;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/// Свертка констант и распространение констант по AST перед трансляцией.
+/// Бинарная операция над литералами заменяется литералом, sqrt от литерала - DoubleNode,
+/// а чтение переменной, которой на этом пути присвоен литерал, - копией литерала.
+/// Результат тот же, что дали бы InterpretTree и виртуальная машина: int - с переполнением
+/// как в Java, деление всегда дает double. Сворачиваются +, -, * над int/double и над
+/// двумя BigInteger и / над int/double с ненулевым делителем; BigInteger вместе с int/double,
+/// деление BigInteger и сравнения (у AST нет логических литералов) остаются как есть.
+///
+/// Значения переменных известны только в линейном коде: на ветвях if значения, присвоенные
+/// в ветке, после if забываются, а переменные, которые присваиваются в теле цикла, неизвестны
+/// и в его условии, и в теле. После присваивания с операцией (+= и т.п.) значение тоже забывается.
+/// Нужны IdNode.symbol и типы выражений; порядок проходов - в IDEController.handleRun.
+public class ConstantFolding extends ASTRewriter {
+    // Известные значения переменных по слоту (IdNode.ind): литерал того же типа, что и переменная
+    private ASTNodes.ExprNode[] known = new ASTNodes.ExprNode[64];
+
+    // Журнал изменений known внутри ветвей и циклов: пары (слот, прежнее значение)
+    private int[] undoSlots = new int[64];
+    private ASTNodes.ExprNode[] undoValues = new ASTNodes.ExprNode[64];
+    private int undoCount;
+    private int depth;//Вложенность ветвей и циклов; в линейном коде верхнего уровня журнал не ведется
+
+    private static final SymbolTable.SymbolInfo SQRT = CompilationContext.standard("sqrt");
+
+    public int folded;//Сколько операций и вызовов sqrt заменено литералами
+    public int propagated;//Сколько чтений переменных заменено литералами
+
+    /// Свернуть константы во всех выражениях оператора (и вложенных операторов)
+    public void fold(ASTNodes.StatementNode node) throws Exception {
+        switch (node.kind) {
+            case ASTNodes.STATEMENT_LIST -> {
+                for (var statement : ((ASTNodes.StatementListNode) node).statements)
+                    fold(statement);
+            }
+            case ASTNodes.ASSIGN -> {
+                var ass = (ASTNodes.AssignNode) node;
+                ass.expr = expr(ass.expr);
+                if (ass.id.symbol != null)
+                    set(ass.id.ind, literalOf(ass.expr, ass.id.symbol.semanticType));
+            }
+            case ASTNodes.ASSIGN_OPERATION -> {
+                var ass = (ASTNodes.AssignOperationNode) node;
+                ass.expr = expr(ass.expr);
+                if (ass.id.symbol != null)
+                    set(ass.id.ind, null);
+            }
+            case ASTNodes.ARRAY_ASSIGN -> {
+                var a = (ASTNodes.ArrayAssignNode) node;
+                a.index = expr(a.index);
+                a.expr = expr(a.expr);
+            }
+            case ASTNodes.ARRAY_ASSIGN_OPERATION -> {
+                var a = (ASTNodes.ArrayAssignOperationNode) node;
+                a.index = expr(a.index);
+                a.expr = expr(a.expr);
+            }
+            case ASTNodes.IF -> {
+                var ifn = (ASTNodes.IfNode) node;
+                ifn.cond = expr(ifn.cond);
+                branch(ifn.then);
+                if (ifn.elseif != null)
+                    branch(ifn.elseif);
+                forgetAssigned(ifn.then);
+                forgetAssigned(ifn.elseif);
+            }
+            case ASTNodes.WHILE -> {
+                var whl = (ASTNodes.WhileNode) node;
+                forgetAssigned(whl.stat);
+                whl.cond = expr(whl.cond);
+                branch(whl.stat);
+            }
+            case ASTNodes.FOR -> {
+                var forn = (ASTNodes.ForNode) node;
+                fold(forn.start);//Выполняется один раз до цикла
+                forgetAssigned(forn.body);
+                forgetAssigned(forn.increment);
+                forn.condition = expr(forn.condition);
+                int mark = undoCount;
+                depth++;
+                fold(forn.body);
+                fold(forn.increment);
+                depth--;
+                undo(mark);
+            }
+            case ASTNodes.PROC_CALL -> {
+                var pars = ((ASTNodes.ProcCallNode) node).pars.lst;
+                for (int i = 0; i < pars.size(); i++)
+                    pars.set(i, expr(pars.get(i)));
+            }
+            default -> { }
+        }
+    }
+
+    /// Обработать оператор, который может и не выполниться; затем вернуть known как было до него
+    private void branch(ASTNodes.StatementNode node) throws Exception {
+        int mark = undoCount;
+        depth++;
+        fold(node);
+        depth--;
+        undo(mark);
+    }
+
+    /// Забыть значения переменных, которые присваиваются в операторе
+    private void forgetAssigned(ASTNodes.StatementNode node) {
+        if (node == null)
+            return;
+        switch (node.kind) {
+            case ASTNodes.STATEMENT_LIST -> {
+                for (var statement : ((ASTNodes.StatementListNode) node).statements)
+                    forgetAssigned(statement);
+            }
+            case ASTNodes.ASSIGN -> set(((ASTNodes.AssignNode) node).id.ind, null);
+            case ASTNodes.ASSIGN_OPERATION -> set(((ASTNodes.AssignOperationNode) node).id.ind, null);
+            case ASTNodes.IF -> {
+                forgetAssigned(((ASTNodes.IfNode) node).then);
+                forgetAssigned(((ASTNodes.IfNode) node).elseif);
+            }
+            case ASTNodes.WHILE -> forgetAssigned(((ASTNodes.WhileNode) node).stat);
+            case ASTNodes.FOR -> {
+                var forn = (ASTNodes.ForNode) node;
+                forgetAssigned(forn.start);
+                forgetAssigned(forn.body);
+                forgetAssigned(forn.increment);
+            }
+            default -> { }
+        }
+    }
+
+    private void set(int slot, ASTNodes.ExprNode value) {
+        if (slot >= known.length) {
+            if (value == null)
+                return;
+            known = Arrays.copyOf(known, Math.max(slot + 1, known.length * 2));
+        }
+        if (known[slot] == value)
+            return;
+        if (depth > 0) {
+            if (undoCount == undoSlots.length) {
+                undoSlots = Arrays.copyOf(undoSlots, undoCount * 2);
+                undoValues = Arrays.copyOf(undoValues, undoCount * 2);
+            }
+            undoSlots[undoCount] = slot;
+            undoValues[undoCount] = known[slot];
+            undoCount++;
+        }
+        known[slot] = value;
+    }
+
+    private void undo(int mark) {
+        while (undoCount > mark) {
+            undoCount--;
+            known[undoSlots[undoCount]] = undoValues[undoCount];
+            undoValues[undoCount] = null;
+        }
+    }
+
+    /// Литерал, который можно запомнить как значение переменной типа type, или null
+    private static ASTNodes.ExprNode literalOf(ASTNodes.ExprNode expr, SymbolTable.SemanticType type) {
+        return switch (expr.kind) {
+            case ASTNodes.INT -> type == SymbolTable.SemanticType.IntType ? expr : null;
+            case ASTNodes.DOUBLE -> type == SymbolTable.SemanticType.DoubleType ? expr : null;
+            case ASTNodes.BIG_INT -> type == SymbolTable.SemanticType.BigIntegerType ? expr : null;
+            default -> null;
+        };
+    }
+
+    /// Чтение переменной с известным значением, операция над литералами и sqrt от литерала - литералом
+    @Override
+    protected ASTNodes.Node replace(ASTNodes.Node node, boolean childrenMarked) {
+        switch (node.kind) {
+            case ASTNodes.ID -> {
+                var id = (ASTNodes.IdNode) node;
+                var value = id.symbol != null && id.symbol.kindType == SymbolTable.KindType.VarName && id.ind < known.length
+                        ? known[id.ind] : null;
+                if (value != null) {
+                    propagated++;
+                    return copy(value, id.position);
+                }
+            }
+            case ASTNodes.BIN_OP -> {
+                var result = binOp((ASTNodes.BinOpNode) node);
+                if (result != null) {
+                    folded++;
+                    return result;
+                }
+            }
+            case ASTNodes.FUNC_CALL -> {
+                var result = sqrt((ASTNodes.FuncCallNode) node);
+                if (result != null) {
+                    folded++;
+                    return result;
+                }
+            }
+            default -> { }
+        }
+        return node;
+    }
+
+    /// Значение операции над литералами или null, если операцию не сворачиваем
+    private static ASTNodes.ExprNode binOp(ASTNodes.BinOpNode bin) {
+        var left = bin.left;
+        var right = bin.right;
+        ASTNodes.ExprNode result = null;
+        if (left.kind == ASTNodes.INT && right.kind == ASTNodes.INT) {
+            int l = ((ASTNodes.IntNode) left).value, r = ((ASTNodes.IntNode) right).value;
+            result = switch (bin.op) {
+                case PLUS -> intNode(l + r, bin.position);
+                case MINUS -> intNode(l - r, bin.position);
+                case MULTIPLE -> intNode(l * r, bin.position);
+                case DIVIDE -> r != 0 ? doubleNode((double) l / r, bin.position) : null;
+                default -> null;
+            };
+        } else if (isIntOrDouble(left) && isIntOrDouble(right)) {
+            double l = realValue(left), r = realValue(right);
+            result = switch (bin.op) {
+                case PLUS -> doubleNode(l + r, bin.position);
+                case MINUS -> doubleNode(l - r, bin.position);
+                case MULTIPLE -> doubleNode(l * r, bin.position);
+                case DIVIDE -> r != 0 ? doubleNode(l / r, bin.position) : null;
+                default -> null;
+            };
+        } else if (left.kind == ASTNodes.BIG_INT && right.kind == ASTNodes.BIG_INT) {
+            var l = new BigInteger(((ASTNodes.BigIntNode) left).value);
+            var r = new BigInteger(((ASTNodes.BigIntNode) right).value);
+            result = switch (bin.op) {
+                case PLUS -> bigIntNode(l.add(r), bin.position);
+                case MINUS -> bigIntNode(l.subtract(r), bin.position);
+                case MULTIPLE -> bigIntNode(l.multiply(r), bin.position);
+                default -> null;
+            };
+        }
+        // Литерал должен иметь тот же тип, что семантическая проверка дала операции
+        return result != null && result.type == bin.type ? result : null;
+    }
+
+    /// sqrt от литерала int/double; вызов должен быть разрешен в стандартную функцию sqrt
+    private static ASTNodes.ExprNode sqrt(ASTNodes.FuncCallNode call) {
+        if (call.name.symbol != SQRT || call.pars.lst.size() != 1)
+            return null;
+        var arg = call.pars.lst.get(0);
+        if (!isIntOrDouble(arg))
+            return null;
+        return doubleNode(Math.sqrt(realValue(arg)), call.position);
+    }
+
+    /// Литерал int или double; общие с DeadCodeElimination помощники
+    static boolean isIntOrDouble(ASTNodes.ExprNode expr) {
+        return expr.kind == ASTNodes.INT || expr.kind == ASTNodes.DOUBLE;
+    }
+
+    static double realValue(ASTNodes.ExprNode expr) {
+        return expr.kind == ASTNodes.INT ? ((ASTNodes.IntNode) expr).value : ((ASTNodes.DoubleNode) expr).value;
+    }
+
+    private static ASTNodes.ExprNode intNode(int value, Position position) {
+        var node = new ASTNodes.IntNode(value, position);
+        node.type = SymbolTable.SemanticType.IntType;
+        return node;
+    }
+
+    private static ASTNodes.ExprNode doubleNode(double value, Position position) {
+        var node = new ASTNodes.DoubleNode(value, position);
+        node.type = SymbolTable.SemanticType.DoubleType;
+        return node;
+    }
+
+    private static ASTNodes.ExprNode bigIntNode(BigInteger value, Position position) {
+        var node = new ASTNodes.BigIntNode(value.toString(), position);
+        node.type = SymbolTable.SemanticType.BigIntegerType;
+        return node;
+    }
+
+    /// Новый узел с тем же значением: известное значение подставляется в каждое чтение отдельно
+    private static ASTNodes.ExprNode copy(ASTNodes.ExprNode literal, Position position) {
+        return switch (literal.kind) {
+            case ASTNodes.INT -> intNode(((ASTNodes.IntNode) literal).value, position);
+            case ASTNodes.DOUBLE -> doubleNode(((ASTNodes.DoubleNode) literal).value, position);
+            default -> {
+                var node = new ASTNodes.BigIntNode(((ASTNodes.BigIntNode) literal).value, position);
+                node.type = SymbolTable.SemanticType.BigIntegerType;
+                yield node;
+            }
+        };
+    }
+}
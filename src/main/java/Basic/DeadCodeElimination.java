@@ -0,0 +1,214 @@
+package Basic;
+
+import SemanticCheckLogic.SymbolTable;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/// Удаление мертвого кода в AST перед трансляцией.
+/// if с постоянным условием заменяется нужной веткой, while и for с постоянно ложным условием
+/// удаляются (от for остается start), а присваивание переменной, которую дальше никто не читает,
+/// удаляется, если его выражение не может бросить исключение.
+///
+/// Логических литералов в AST нет, поэтому постоянное условие - это сравнение двух литералов;
+/// его дает ConstantFolding (например, 1 > 2 или (7 - 8) < 3), поэтому проход запускается после него.
+///
+/// Живые переменные (по слоту IdNode.ind) считаются обратным проходом по операторам. Для циклов
+/// без итераций до неподвижной точки: в условии и теле цикла живой считается каждая переменная,
+/// которая читается где-нибудь в цикле, поэтому внутри цикла удаляются только присваивания
+/// переменным, которые в цикле не читаются вовсе. После конца программы переменные никто не читает.
+public class DeadCodeElimination extends ASTWalker {
+    // Куда enter записывает прочитанные переменные и нашлась ли операция, которая может бросить исключение
+    private BitSet reads;
+    private boolean unsafe;
+
+    public int removed;//Сколько удалено присваиваний
+    public int branches;//Сколько if, while и for с постоянным условием свернуто
+
+    /// Удалить мертвый код программы; возвращает новый корень (если корень сам оказался мертвым,
+    /// это пустой список операторов)
+    public ASTNodes.StatementNode eliminate(ASTNodes.StatementNode program) throws Exception {
+        return orEmpty(statement(program, new BitSet()));
+    }
+
+    /// Обработать оператор; live на входе - переменные, живые после него, на выходе - живые перед ним.
+    /// Возвращает оператор, которым заменить node, или null, если оператор удален
+    private ASTNodes.StatementNode statement(ASTNodes.StatementNode node, BitSet live) throws Exception {
+        if (node == null)
+            return null;
+        switch (node.kind) {
+            case ASTNodes.STATEMENT_LIST -> {
+                var statements = ((ASTNodes.StatementListNode) node).statements;
+                var kept = new ArrayList<ASTNodes.StatementNode>(statements.size());
+                for (int i = statements.size() - 1; i >= 0; i--) {
+                    var statement = statement(statements.get(i), live);
+                    if (statement != null)
+                        kept.add(statement);
+                }
+                if (kept.isEmpty())
+                    return null;
+                statements.clear();
+                for (int i = kept.size() - 1; i >= 0; i--)
+                    statements.add(kept.get(i));
+                return node;
+            }
+            case ASTNodes.ASSIGN -> {
+                var ass = (ASTNodes.AssignNode) node;
+                if (isVariable(ass.id)) {
+                    if (!live.get(ass.id.ind) && isSafe(ass.expr)) {
+                        removed++;
+                        return null;
+                    }
+                    live.clear(ass.id.ind);
+                }
+                read(ass.expr, live);
+                return node;
+            }
+            case ASTNodes.ASSIGN_OPERATION -> {
+                var ass = (ASTNodes.AssignOperationNode) node;
+                // Деление может бросить исключение (целое или BigInteger на 0), его не удаляем
+                if (isVariable(ass.id) && !live.get(ass.id.ind) && ass.op != '/' && isSafe(ass.expr)) {
+                    removed++;
+                    return null;
+                }
+                read(ass.id, live);
+                read(ass.expr, live);
+                return node;
+            }
+            case ASTNodes.IF -> {
+                var ifn = (ASTNodes.IfNode) node;
+                var value = constant(ifn.cond);
+                if (value != null) {
+                    branches++;
+                    return statement(value ? ifn.then : ifn.elseif, live);
+                }
+                var liveElse = (BitSet) live.clone();
+                ifn.then = statement(ifn.then, live);
+                ifn.elseif = statement(ifn.elseif, liveElse);
+                if (ifn.then == null && ifn.elseif == null && isSafe(ifn.cond))
+                    return null;
+                ifn.then = orEmpty(ifn.then);
+                live.or(liveElse);
+                read(ifn.cond, live);
+                return node;
+            }
+            case ASTNodes.WHILE -> {
+                var whl = (ASTNodes.WhileNode) node;
+                if (constant(whl.cond) == Boolean.FALSE) {
+                    branches++;
+                    return null;
+                }
+                read(whl, live);
+                whl.stat = orEmpty(statement(whl.stat, (BitSet) live.clone()));
+                return node;
+            }
+            case ASTNodes.FOR -> {
+                var forn = (ASTNodes.ForNode) node;
+                if (constant(forn.condition) == Boolean.FALSE) {
+                    branches++;
+                    return statement(forn.start, live);
+                }
+                read(forn.condition, live);
+                read(forn.body, live);
+                read(forn.increment, live);
+                var inner = (BitSet) live.clone();
+                forn.increment = orEmpty(statement(forn.increment, inner));
+                forn.body = orEmpty(statement(forn.body, inner));
+                forn.start = orEmpty(statement(forn.start, live));
+                return node;
+            }
+            default -> {
+                read(node, live);//Вызовы процедур и присваивания элементам массивов остаются всегда
+                return node;
+            }
+        }
+    }
+
+    /// Добавить в live все переменные, которые читаются в поддереве node
+    private void read(ASTNodes.Node node, BitSet live) throws Exception {
+        if (node == null)
+            return;
+        reads = live;
+        walk(node);
+        reads = null;
+    }
+
+    /// Выражение без операций, которые могут бросить исключение
+    private boolean isSafe(ASTNodes.ExprNode expr) throws Exception {
+        unsafe = false;
+        reads = null;
+        walk(expr);
+        return !unsafe;
+    }
+
+    @Override
+    protected boolean enter(ASTNodes.Node node) throws Exception {
+        switch (node.kind) {
+            case ASTNodes.ID -> {
+                var id = (ASTNodes.IdNode) node;
+                if (reads != null && isVariable(id))
+                    reads.set(id.ind);
+            }
+            case ASTNodes.ASSIGN -> {
+                walk(((ASTNodes.AssignNode) node).expr);//Переменная слева не читается
+                return false;
+            }
+            case ASTNodes.BIN_OP -> {
+                var bin = (ASTNodes.BinOpNode) node;
+                // Деление BigInteger на 0 бросает исключение; int и double делятся как double
+                if (bin.op == LexerUnit.TokenType.DIVIDE && (bin.left.type == SymbolTable.SemanticType.BigIntegerType
+                        || bin.right.type == SymbolTable.SemanticType.BigIntegerType))
+                    unsafe = true;
+            }
+            case ASTNodes.ARRAY_ACCESS, ASTNodes.ARRAY_DECLARATION, ASTNodes.ARRAY_LITERAL, ASTNodes.FUNC_CALL -> unsafe = true;
+            default -> { }
+        }
+        return true;
+    }
+
+    private static boolean isVariable(ASTNodes.IdNode id) {
+        return id.symbol != null && id.symbol.kindType == SymbolTable.KindType.VarName;
+    }
+
+    /// Значение сравнения двух литералов или null, если условие не постоянное
+    private static Boolean constant(ASTNodes.ExprNode cond) {
+        if (cond == null || cond.kind != ASTNodes.BIN_OP)
+            return null;
+        var bin = (ASTNodes.BinOpNode) cond;
+        var left = bin.left;
+        var right = bin.right;
+        int cmp;
+        boolean equal;
+        if (left.kind == ASTNodes.INT && right.kind == ASTNodes.INT) {
+            int l = ((ASTNodes.IntNode) left).value, r = ((ASTNodes.IntNode) right).value;
+            cmp = Integer.compare(l, r);
+            equal = l == r;
+        } else if (ConstantFolding.isIntOrDouble(left) && ConstantFolding.isIntOrDouble(right)) {
+            double l = ConstantFolding.realValue(left), r = ConstantFolding.realValue(right);
+            if (Double.isNaN(l) || Double.isNaN(r))
+                return null;
+            cmp = l < r ? -1 : l > r ? 1 : 0;
+            equal = l == r;
+        } else if (left.kind == ASTNodes.BIG_INT && right.kind == ASTNodes.BIG_INT) {
+            cmp = new BigInteger(((ASTNodes.BigIntNode) left).value).compareTo(new BigInteger(((ASTNodes.BigIntNode) right).value));
+            equal = cmp == 0;
+        } else {
+            return null;
+        }
+        return switch (bin.op) {
+            case EQUAL -> equal;
+            case NOTEQUAL -> !equal;
+            case LESS -> cmp < 0;
+            case LESSEQUAL -> cmp <= 0;
+            case GREATER -> cmp > 0;
+            case GREATEREQUAL -> cmp >= 0;
+            default -> null;
+        };
+    }
+
+    /// Там, где оператор обязателен (ветка then, тело цикла), вместо удаленного - пустой список
+    private static ASTNodes.StatementNode orEmpty(ASTNodes.StatementNode node) {
+        return node != null ? node : new ASTNodes.StatementListNode();
+    }
+}
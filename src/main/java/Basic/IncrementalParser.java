@@ -0,0 +1,331 @@
+package Basic;
+
+import java.util.Arrays;
+
+/// Разбор с повторным использованием AST при правках текста.
+/// Для каждого оператора верхнего уровня запоминаются смещения его первого и последнего токена.
+/// Правка заново лексирует и разбирает только задетые ею операторы верхнего уровня
+/// (блок {} - это один оператор) и вставляет новые поддеревья в прежний список,
+/// остальные узлы переиспользуются: у операторов после правки только сдвигаются позиции.
+/// Если правка меняет разбор за пределами этих операторов (незакрытая строка, //,
+/// удаленная скобка блока) или текст содержит ошибку, выполняется полный разбор.
+/// Прежнее дерево при правке изменяется на месте.
+public class IncrementalParser {
+    private CharSequence code;
+    private LineIndex lines;
+    private final NameTable names = new NameTable();//Общая для всех разборов: номера имен в дереве не меняются
+    private ASTNodes.StatementListNode program;
+
+    // Смещения начала первого и конца последнего токена операторов верхнего уровня
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int count;
+
+    private int lastReparsed;//Сколько операторов разобрано заново при последней правке
+
+    public IncrementalParser(CharSequence code) throws Exception {
+        this.code = code;
+        parseAll();
+    }
+
+    public ASTNodes.StatementListNode program() { return program; }
+    public CharSequence code() { return code; }
+    public int statementCount() { return count; }
+    public int statementStart(int index) { return starts[index]; }
+    public int statementEnd(int index) { return ends[index]; }
+
+    /// Сколько операторов верхнего уровня разобрано заново при последней правке (при полном разборе - все)
+    public int lastReparsed() { return lastReparsed; }
+
+    /// Новый текст целиком, например из редактора: правкой считается участок между общими началом и концом
+    public ASTNodes.StatementListNode update(CharSequence newCode) throws Exception {
+        int oldLength = code.length(), newLength = newCode.length();
+        int prefix = 0;
+        int limit = Math.min(oldLength, newLength);
+        while (prefix < limit && code.charAt(prefix) == newCode.charAt(prefix))
+            prefix++;
+        int suffix = 0;
+        while (suffix < limit - prefix && code.charAt(oldLength - 1 - suffix) == newCode.charAt(newLength - 1 - suffix))
+            suffix++;
+        if (prefix == oldLength && prefix == newLength && program != null)
+            return program;
+        return edit(prefix, oldLength - suffix, newCode.subSequence(prefix, newLength - suffix));
+    }
+
+    /// Заменить code[from, to) на replacement и обновить дерево
+    public ASTNodes.StatementListNode edit(int from, int to, CharSequence replacement) throws Exception {
+        var newCode = new StringBuilder(code.length() - (to - from) + replacement.length())
+                .append(code, 0, from).append(replacement).append(code, to, code.length()).toString();
+        var oldCode = code;
+        var oldLines = lines;
+        code = newCode;
+        lines = null;
+        if (program == null) {
+            parseAll();
+            return program;
+        }
+
+        // Задетые операторы: с последнего, начинающегося не позже from, по первый, кончающийся не раньше to
+        int before = lastStartAtOrBefore(from);
+        int first = Math.max(before, 0);
+        int last = firstEndAtOrAfter(to);
+        int regionStart = before < 0 ? 0 : starts[first];
+        int delta = replacement.length() - (to - from);
+        int regionEnd = (last == count ? oldCode.length() : ends[last]) + delta;
+        if (last == count)
+            last = count - 1;
+
+        var region = new Region(newCode, regionStart, regionEnd);
+        if (!region.parseInPlace()) {
+            parseAll();
+            return program;
+        }
+        lines = region.lexer.lineIndex();
+
+        // Позиции операторов после правки: строки сдвигаются на разницу числа строк,
+        // а на строке, где кончалась правка, еще и столбцы
+        if (last + 1 < count) {
+            if (oldLines == null)
+                oldLines = new LineIndex(oldCode);
+            int oldLine = oldLines.lineOf(to);
+            int lineDelta = lines.lineOf(from + replacement.length()) - oldLine;
+            int columnDelta = lines.columnOf(from + replacement.length()) - oldLines.columnOf(to);
+            if (lineDelta != 0 || columnDelta != 0 && oldLines.lineOf(starts[last + 1]) == oldLine) {
+                var shifter = new PositionShifter(oldLine, lineDelta, columnDelta);
+                for (int i = last + 1; i < count; i++)
+                    program.statements.get(i).visitP(shifter);
+            }
+        }
+
+        splice(first, last, region, delta);
+        lastReparsed = region.count;
+        return program;
+    }
+
+    private void parseAll() throws Exception {
+        program = null;
+        count = 0;
+        var region = new Region(code, 0, code.length());
+        region.parseStatements();
+        region.parser.requires(LexerUnit.TokenType.EOF);
+        program = region.statements;
+        starts = region.starts;
+        ends = region.ends;
+        count = region.count;
+        lines = region.lexer.lineIndex();
+        lastReparsed = count;
+    }
+
+    /// Заменить операторы first..last разобранными заново, сдвинув смещения следующих на delta
+    private void splice(int first, int last, Region region, int delta) {
+        int removed = last - first + 1;
+        int newCount = count - removed + region.count;
+        var newStarts = new int[Math.max(newCount, 16)];
+        var newEnds = new int[newStarts.length];
+        System.arraycopy(starts, 0, newStarts, 0, first);
+        System.arraycopy(ends, 0, newEnds, 0, first);
+        System.arraycopy(region.starts, 0, newStarts, first, region.count);
+        System.arraycopy(region.ends, 0, newEnds, first, region.count);
+        for (int i = last + 1, j = first + region.count; i < count; i++, j++) {
+            newStarts[j] = starts[i] + delta;
+            newEnds[j] = ends[i] + delta;
+        }
+        starts = newStarts;
+        ends = newEnds;
+        count = newCount;
+
+        var statements = program.statements;
+        statements.subList(first, last + 1).clear();
+        statements.addAll(first, region.statements.statements);
+    }
+
+    private int lastStartAtOrBefore(int offset) {
+        int found = Arrays.binarySearch(starts, 0, count, offset);
+        return found >= 0 ? found : -found - 2;
+    }
+
+    private int firstEndAtOrAfter(int offset) {
+        int found = Arrays.binarySearch(ends, 0, count, offset);
+        return found >= 0 ? found : -found - 1;
+    }
+
+    /// Операторы верхнего уровня, занимающие код [from, to). Лексер читает и дальше to:
+    /// парсер должен видеть настоящий следующий токен, а не искусственный конец
+    private class Region {
+        final Parser parser;
+        final LexerUnit.Lexer lexer;
+        final int to;
+        final ASTNodes.StatementListNode statements = new ASTNodes.StatementListNode();
+        int[] starts = new int[16];
+        int[] ends = new int[16];
+        int count;
+
+        Region(CharSequence code, int from, int to) throws Exception {
+            this.lexer = new LexerUnit.Lexer(code, from, code.length(), names);
+            this.parser = new Parser(lexer);
+            this.to = to;
+        }
+
+        /// Разобрать как часть всего текста. false, если кусок не разбирается или
+        /// разбор не кончился ровно на to - тогда дальше текст разбирался бы иначе
+        boolean parseInPlace() {
+            try {
+                parseStatements();
+                return parser.tokens.end(-1) == to;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        /// Как Parser.statementList, но с запоминанием границ операторов; ';' после to не берется
+        void parseStatements() throws Exception {
+            add(parser);
+            while (parser.at(LexerUnit.TokenType.SEMICOLON) && parser.tokens.start(0) < to) {
+                parser.nextLexem();
+                add(parser);
+            }
+        }
+
+        private void add(Parser parser) throws Exception {
+            int start = parser.tokens.start(0);
+            statements.add(parser.statement());
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            starts[count] = start;
+            ends[count] = parser.tokens.end(-1);
+            count++;
+        }
+    }
+
+    /// Сдвиг позиций всех узлов поддерева. Парсер делает общим объект Position только
+    /// у BinOpNode и его левого операнда, такую позицию сдвигает операнд
+    private static class PositionShifter implements ASTNodes.IVisitorP {
+        private final int line;//Строка (до правки), на которой кончалась правка
+        private final int lineDelta;
+        private final int columnDelta;
+
+        PositionShifter(int line, int lineDelta, int columnDelta) {
+            this.line = line;
+            this.lineDelta = lineDelta;
+            this.columnDelta = columnDelta;
+        }
+
+        private void shift(Position position) {
+            if (position == null)
+                return;
+            if (position.line == line)
+                position.column += columnDelta;
+            position.line += lineDelta;
+        }
+
+        private void shift(ASTNodes.ExprNode node) {
+            if (node == null) return;
+            shift(((ASTNodes.Node) node).position);
+            shift(node.position);
+        }
+
+        private void shift(ASTNodes.StatementNode node) {
+            shift(((ASTNodes.Node) node).position);
+            shift(node.position);
+        }
+
+        private void visit(ASTNodes.Node node) throws Exception {
+            if (node != null) node.visitP(this);
+        }
+
+        @Override public void visitNode(ASTNodes.Node node) { shift(node.position); }
+        @Override public void visitExprNode(ASTNodes.ExprNode node) { shift(node); }
+        @Override public void visitStatementNode(ASTNodes.StatementNode node) { shift(node); }
+        @Override public void visitInt(ASTNodes.IntNode node) { shift(node); shift(node.position); }
+        @Override public void visitBigInt(ASTNodes.BigIntNode node) { shift(node); shift(node.position); }
+        @Override public void visitDouble(ASTNodes.DoubleNode node) { shift(node); shift(node.position); }
+        @Override public void visitId(ASTNodes.IdNode node) { shift(node); }
+
+        @Override public void visitBinOp(ASTNodes.BinOpNode node) throws Exception {
+            if (node.left == null || node.position != node.left.position)
+                shift(node);
+            visit(node.left);
+            visit(node.right);
+        }
+        @Override public void visitStatementList(ASTNodes.StatementListNode node) throws Exception {
+            shift(node);
+            for (var statement : node.statements)
+                visit(statement);
+        }
+        @Override public void visitExprList(ASTNodes.ExprListNode node) throws Exception {
+            shift(node.position);
+            for (var expr : node.lst)
+                visit(expr);
+        }
+        @Override public void visitArrayAccess(ASTNodes.ArrayAccessNode node) throws Exception {
+            shift(node);
+            visit(node.array);
+            visit(node.index);
+        }
+        @Override public void visitArrayLiteral(ASTNodes.ArrayLiteralNode node) throws Exception {
+            shift(node);
+            for (var element : node.elements)
+                visit(element);
+        }
+        @Override public void visitArrayAssign(ASTNodes.ArrayAssignNode node) throws Exception {
+            shift(node);
+            visit(node.array);
+            visit(node.index);
+            visit(node.expr);
+        }
+        @Override public void visitArrayAssignOperation(ASTNodes.ArrayAssignOperationNode node) throws Exception {
+            shift(node);
+            visit(node.array);
+            visit(node.index);
+            visit(node.expr);
+        }
+        @Override public void visitArrayDeclaration(ASTNodes.ArrayDeclarationNode node) throws Exception {
+            shift(node);
+            visit(node.id);
+            visit(node.size);
+            if (node.initialElements != null)
+                for (var element : node.initialElements)
+                    visit(element);
+        }
+        @Override public void visitAssign(ASTNodes.AssignNode node) throws Exception {
+            shift(node);
+            visit(node.id);
+            visit(node.expr);
+        }
+        @Override public void visitAssignOperation(ASTNodes.AssignOperationNode node) throws Exception {
+            shift(node);
+            visit(node.id);
+            visit(node.expr);
+        }
+        @Override public void visitIf(ASTNodes.IfNode node) throws Exception {
+            shift(node);
+            visit(node.cond);
+            visit(node.then);
+            visit(node.elseif);
+        }
+        @Override public void visitFor(ASTNodes.ForNode node) throws Exception {
+            shift(node);
+            visit(node.start);
+            visit(node.condition);
+            visit(node.increment);
+            visit(node.body);
+        }
+        @Override public void visitWhile(ASTNodes.WhileNode node) throws Exception {
+            shift(node);
+            visit(node.cond);
+            visit(node.stat);
+        }
+        @Override public void visitProcCall(ASTNodes.ProcCallNode node) throws Exception {
+            shift(node);
+            visit(node.name);
+            visit(node.pars);
+        }
+        @Override public void visitFuncCall(ASTNodes.FuncCallNode node) throws Exception {
+            shift(node);
+            visit(node.name);
+            visit(node.pars);
+        }
+    }
+}
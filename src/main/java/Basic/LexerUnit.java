@@ -5,7 +5,8 @@ import ExceptionLogic.CompilerException;
 import java.util.ArrayList;
 import java.util.Dictionary;
 import java.util.Hashtable;
-import java.util.regex.Pattern;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class LexerUnit {
     public enum TokenType {
@@ -39,6 +40,28 @@ public class LexerUnit {
         KeyWords.put("for", TokenType.FOR);
     }
 
+    // Ключевые слова, разложенные по длине и первой букве: у всех слов из KeyWords эта пара уникальна,
+    // так что поиск - один доступ к массиву и одно сравнение символов без создания строки
+    private static final String[][] KeyWordWords;
+    private static final TokenType[][] KeyWordTypes;
+    static {
+        int maxLength = 0;
+        for (var keys = KeyWords.keys(); keys.hasMoreElements(); )
+            maxLength = Math.max(maxLength, keys.nextElement().length());
+        KeyWordWords = new String[maxLength + 1][128];
+        KeyWordTypes = new TokenType[maxLength + 1][128];
+        for (var keys = KeyWords.keys(); keys.hasMoreElements(); ) {
+            var word = keys.nextElement();
+            var first = word.charAt(0);
+            if (KeyWordWords[word.length()][first] != null)
+                throw new IllegalStateException("Ключевые слова " + word + " и " + KeyWordWords[word.length()][first] + " неразличимы по длине и первой букве");
+            KeyWordWords[word.length()][first] = word;
+            KeyWordTypes[word.length()][first] = KeyWords.get(word);
+        }
+    }
+
+    public static final TokenType[] TokenTypes = TokenType.values();
+
     public static TokenType[] ArithmeticOperations  = new TokenType[]{
             TokenType.PLUS, TokenType.MINUS, TokenType.MULTIPLE, TokenType.DIVIDE
     };
@@ -50,36 +73,79 @@ public class LexerUnit {
             TokenType.AND, TokenType.OR, TokenType.NOT
     };
 
+    // Классы символов: таблица покрывает ASCII и основной блок кириллицы (U+0000..U+045F)
+    private static final byte DIGIT = 1;
+    private static final byte ALPHA = 2;
+    private static final byte[] CharClasses = new byte[0x0460];
+    static {
+        for (char c = '0'; c <= '9'; c++) CharClasses[c] = DIGIT;
+        for (char c = 'A'; c <= 'Z'; c++) CharClasses[c] = ALPHA;
+        for (char c = 'a'; c <= 'z'; c++) CharClasses[c] = ALPHA;
+        for (char c = 'А'; c <= 'я'; c++) CharClasses[c] = ALPHA;
+        CharClasses['_'] = ALPHA;
+        CharClasses['ё'] = ALPHA;
+        CharClasses['Ё'] = ALPHA;
+    }
+
+    public static boolean isDigit(char c) {
+        // Остальной Unicode - медленный путь, как и раньше через Character.isDigit
+        return c < CharClasses.length ? CharClasses[c] == DIGIT : Character.isDigit(c);
+    }
+
+    public static int digitValue(char c) {
+        return c <= '9' ? c - '0' : Character.digit(c, 10);
+    }
+
+    // Точные степени десяти: до 10^22 double представляет их без округления
+    private static final double[] PowersOfTen = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    public static boolean isAlpha(char c) {
+        // Буквы вне таблицы в идентификаторах не допускаются
+        return c < CharClasses.length && CharClasses[c] == ALPHA;
+    }
+
+    public static boolean isAlphaNumeric(char c) {
+        return c < CharClasses.length ? CharClasses[c] != 0 : Character.isDigit(c);
+    }
+
     public static class Token{
         public TokenType type;
         public Object value;
         public Position position;
         public Token(TokenType type, Object value, int line, int column) {
+            this(type, value, new Position(line, column));
+        }
+        public Token(TokenType type, Object value, Position position) {
             this.type = type;
             this.value = value;
-            position = new Position(line, column);
+            this.position = position;
         }
     }
 
     public static class Lexer {
-        public ArrayList<Token> tokens = new ArrayList<Token>();
-        public String code;//Код программы, который анализируется в конструкторе
+        private TokenBuffer tokens;//Создается при первом обращении: конструктор не отдает this наружу
+        public CharSequence code;//Код программы: строка или отображенный в память файл (SourceText)
 
-        private int line = 1;//Текущая строка
-        private int column = 0;//Текущий столбец
         private int currentPosition = 0;//Текущая позиция
         private int start = 0;//Стартовая позиция токена
-        private int position0 = 0;//начало текущего
+        private int end;//Токены, начинающиеся с этой позиции, не сканируются (граница куска при параллельном разборе)
+        private LineIndex lineIndex;//Строки и столбцы считаются по смещениям только по запросу
+        public final NameTable names;//Имена идентификаторов, по одной строке на имя
+
+        public LineIndex lineIndex() {
+            if (lineIndex == null)
+                lineIndex = new LineIndex(code);
+            return lineIndex;
+        }
 
-        private Position getCurrentPosition() { return new Position(line, column); }
+        public Position positionOf(int offset) { return lineIndex().positionOf(offset); }
+
+        private Position getCurrentPosition() { return positionOf(start); }
         private boolean isAtEnd() {return currentPosition >= code.length(); }
         private char peekChar(){ return isAtEnd() ? '\0' :  code.charAt(currentPosition); }
-        private boolean isAlpha(char c) {
-            return Pattern.matches( "[A-Za-zА-Яа-яёЁ_]", String.valueOf(c));
-        }
-        private boolean isAlphaNumeric(char c) {
-            return isAlpha(c) || Character.isDigit(c);
-        }
         private char peekNextChar(){
             var pos = currentPosition + 1;
             return (pos > code.length()) ? '\0' : code.charAt(pos);
@@ -91,8 +157,43 @@ public class LexerUnit {
             return temp;
         }
 
-        private void addToken(TokenType type, Object value){
-            tokens.add(new Token(type, value, line, start + 1 - position0));
+        // Последний найденный токен: сами значения и позиция собираются только по запросу
+        private TokenType tokenType;
+        private int tokenStart;
+        private int tokenLength;
+        private long tokenPayload;//ID - номер имени в names, INT - значение, DOUBLELITERAL - биты double
+
+        public int tokenStart() { return tokenStart; }
+        public int tokenLength() { return tokenLength; }
+        public long tokenPayload() { return tokenPayload; }
+
+        private void addToken(TokenType type){
+            tokenType = type;
+            tokenStart = start;
+            tokenLength = currentPosition - start;
+            tokenPayload = 0;
+        }
+
+        /// Текст значения токена: без кавычек у строк и без суффикса bi у больших чисел
+        public String tokenText(TokenType type, int start, int length, long payload) {
+            return switch (type) {
+                case ID -> names.name((int) payload);
+                case STRINGLITERAL -> code.subSequence(start + 1, start + length - 1).toString();
+                case BIGINTEGERLITERAL -> code.charAt(start + length - 1) == 'i'
+                        ? code.subSequence(start, start + length - 2).toString()
+                        : code.subSequence(start, start + length).toString();
+                default -> code.subSequence(start, start + length).toString();
+            };
+        }
+
+        /// Значение токена в том виде, в каком его хранит Token
+        public Object tokenValue(TokenType type, int start, int length, long payload) {
+            return switch (type) {
+                case DOUBLELITERAL -> Double.longBitsToDouble(payload);
+                case INT, BIGINTEGERLITERAL, STRINGLITERAL, ID,
+                     TRUE, FALSE, IF, ELSE, WHILE, DO, THEN, FOR -> tokenText(type, start, length, payload);
+                default -> null;
+            };
         }
 
         private boolean isMatch(char expected){
@@ -107,157 +208,338 @@ public class LexerUnit {
         private void identifier(){
             while(isAlphaNumeric(peekChar()))
                 advance();
-            var value = code.substring(start, currentPosition);
-            var type = TokenType.ID;
-
-            if(KeyWords.get(value) != null)
-                type = KeyWords.get(value);
+            var type = keyWord(start, currentPosition - start);
+            addToken(type);
+            if (type == TokenType.ID)
+                tokenPayload = names.id(code, start, currentPosition);
+        }
 
-            addToken(type, value);
+        /// Тип ключевого слова code[start, start + length) или ID
+        private TokenType keyWord(int start, int length) {
+            if (length >= KeyWordWords.length)
+                return TokenType.ID;
+            var first = code.charAt(start);
+            if (first >= 128)
+                return TokenType.ID;
+            var word = KeyWordWords[length][first];
+            if (word == null)
+                return TokenType.ID;
+            for (int i = 1; i < length; i++)
+                if (code.charAt(start + i) != word.charAt(i))
+                    return TokenType.ID;
+            return KeyWordTypes[length][first];
         }
 
         private void getString(){
-            while(peekChar() != '"'){
-                if(peekChar() == '\n'){
-                    line++;
-                    column = 1;
-                }
+            while(peekChar() != '"')
                 advance();
-            }
             advance();
-            var value = code.substring(start + 1, currentPosition - 1);
-            addToken(TokenType.STRINGLITERAL, value);
+            addToken(TokenType.STRINGLITERAL);
         }
 
+        /// Число разбирается прямо при сканировании: цифры накапливаются в long,
+        /// значение кладется в tokenPayload, и парсеру не нужно снова разбирать текст.
+        /// Целое, не помещающееся в int, становится BIGINTEGERLITERAL.
         private void getNumber(){
-            while(Character.isDigit(peekChar()))
-                advance();
+            long value = digitValue(code.charAt(start));
+            int significant = value == 0 ? 0 : 1;//Значащие цифры без ведущих нулей
+            while(isDigit(peekChar())) {
+                int digit = digitValue(advance());
+                if (significant < 18)
+                    value = value * 10 + digit;
+                if (significant > 0 || digit != 0)
+                    significant++;
+            }
 
             if(peekChar() == 'b' && peekNextChar() == 'i'){
                 advance();
                 advance();
-                var value = code.substring(start, currentPosition - 2); // без bi
-                addToken(TokenType.BIGINTEGERLITERAL, value);
+                addToken(TokenType.BIGINTEGERLITERAL);
                 return;
             }
 
-            if(peekChar() == '.' && Character.isDigit(peekNextChar())){
+            if(peekChar() == '.' && isDigit(peekNextChar())){
                 advance();
-                while(Character.isDigit(peekChar()))
-                    advance();
-                var value = code.substring(start, currentPosition);
-                var toDouble = Double.parseDouble(value);
-                addToken(TokenType.DOUBLELITERAL, toDouble);
+                int fraction = 0;
+                while(isDigit(peekChar())) {
+                    int digit = digitValue(advance());
+                    if (significant < 18)
+                        value = value * 10 + digit;
+                    if (significant > 0 || digit != 0)
+                        significant++;
+                    fraction++;
+                }
+                addToken(TokenType.DOUBLELITERAL);
+                // Мантисса до 15 цифр и степень до 10^22 точны, и одно деление дает правильно округленный результат
+                double number = significant <= 15 && fraction < PowersOfTen.length
+                        ? value / PowersOfTen[fraction]
+                        : Double.parseDouble(code.subSequence(start, currentPosition).toString());
+                tokenPayload = Double.doubleToRawLongBits(number);
                 return;
             }
-            var value = code.substring(start, currentPosition);
-            addToken(TokenType.INT, value);
+
+            if (significant > 10 || value > Integer.MAX_VALUE) {
+                addToken(TokenType.BIGINTEGERLITERAL);
+                return;
+            }
+            addToken(TokenType.INT);
+            tokenPayload = value;
         }
 
 
 
-        public String[] lines;
-        public Lexer(String code){
-            this.code = code;
-            lines = code.split("\n");
+        public Lexer(CharSequence code){
+            this(code, 0, code.length(), new NameTable());
         }
 
-        public String[] getLines(){ return code.split("\n"); }
+        /// Буфер токенов, собранных analize
+        public TokenBuffer tokens() {
+            if (tokens == null)
+                tokens = new TokenBuffer(this);
+            return tokens;
+        }
 
+        /// Лексер для куска кода [from, to): токены, начинающиеся с to, не выдаются.
+        /// Таблица имен может быть общей с другими лексерами того же текста
+        public Lexer(CharSequence code, int from, int to, NameTable names){
+            this.code = code;
+            this.currentPosition = from;
+            this.end = to;
+            this.names = names;
+        }
+
+        /// Разобрать весь код сразу, сложив токены в tokens
         public void analize() throws CompilerException.LexerException {
-            while (!isAtEnd()) {
+            var tokens = tokens();
+            TokenType type;
+            do {
+                type = scan();
+                tokens.add(type, tokenStart, tokenLength, tokenPayload);
+            } while (type != TokenType.EOF);
+        }
+
+        // Меньше этого кусок не делаем: на маленьких кусках накладные расходы больше выигрыша
+        private static final int MIN_CHUNK = 1 << 18;
+
+        /// То же, что analize(), но текст режется по переводам строк на куски,
+        /// которые разбираются параллельно в pool. Результат (токены, позиции, номера имен)
+        /// совпадает с последовательным разбором.
+        public void analizeParallel(ForkJoinPool pool) throws CompilerException.LexerException {
+            // С одним потоком куски - чистые накладные расходы: их сшивание и разбор заново
+            int chunkCount = Math.min(pool.getParallelism() * 4, code.length() / MIN_CHUNK);
+            if (chunkCount < 2 || pool.getParallelism() < 2) {
+                analize();
+                return;
+            }
+
+            var chunks = new ArrayList<Chunk>(chunkCount);
+            int from = currentPosition;
+            for (int i = 1; i <= chunkCount && from < code.length(); i++) {
+                int to = SourceText.indexOf(code, '\n', (int) ((long) code.length() * i / chunkCount));
+                to = i == chunkCount || to < 0 ? code.length() : to + 1;
+                if (to <= from)
+                    continue;
+                var chunk = new Chunk(code, from, to);
+                pool.execute(chunk);
+                chunks.add(chunk);
+                from = to;
+            }
+
+            // Куски сшиваются по порядку. Кусок разобран верно, если начинается там, где закончил предыдущий;
+            // иначе граница попала внутрь строки, и кусок разбирается заново с правильного места
+            int expected = currentPosition;
+            for (var chunk : chunks) {
+                chunk.join();
+                if (chunk.from != expected) {
+                    if (expected >= chunk.to)
+                        continue;
+                    chunk = new Chunk(code, expected, chunk.to);
+                    chunk.compute();
+                }
+                chunk.rethrow();
+                tokens().append(chunk.lexer.tokens(), nameIds(chunk.lexer.names));
+                expected = chunk.lexer.currentPosition;
+            }
+
+            currentPosition = code.length();
+            tokens().add(scan(), tokenStart, tokenLength, tokenPayload);
+        }
+
+        /// Номера имен куска в общей таблице. Куски добавляются по порядку, и внутри куска
+        /// имена пронумерованы по первому вхождению, поэтому номера совпадают с последовательным разбором
+        private int[] nameIds(NameTable chunkNames) {
+            var ids = new int[chunkNames.size()];
+            for (int i = 0; i < ids.length; i++) {
+                var name = chunkNames.name(i);
+                ids[i] = names.id(name, 0, name.length());
+            }
+            return ids;
+        }
+
+        /// Кусок текста [from, to), разбираемый своим лексером.
+        /// Задача живет только внутри analizeParallel и не сериализуется, поэтому поля transient
+        private static class Chunk extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+            final int from;
+            final int to;
+            final transient Lexer lexer;
+            private transient RuntimeException failure;
+            private transient CompilerException.LexerException error;
+
+            Chunk(CharSequence code, int from, int to) {
+                this.from = from;
+                this.to = to;
+                this.lexer = new Lexer(code, from, to, new NameTable());
+            }
+
+            @Override
+            protected void compute() {
+                // Ошибки запоминаются: кусок может оказаться разобранным не с того места, и тогда они не нужны
+                try {
+                    var tokens = lexer.tokens();
+                    TokenType type;
+                    while ((type = lexer.scan()) != TokenType.EOF)
+                        tokens.add(type, lexer.tokenStart, lexer.tokenLength, lexer.tokenPayload);
+                } catch (CompilerException.LexerException e) {
+                    error = e;
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+            }
+
+            void rethrow() throws CompilerException.LexerException {
+                if (error != null) throw error;
+                if (failure != null) throw failure;
+            }
+        }
+
+        /// Получить следующий токен; после конца кода каждый вызов возвращает EOF
+        public Token nextToken() throws CompilerException.LexerException {
+            var type = scan();
+            return new Token(type, tokenValue(type, tokenStart, tokenLength, tokenPayload), positionOf(tokenStart));
+        }
+
+        /// Найти следующий токен, не создавая объектов: его данные доступны через tokenStart() и т.д.
+        public TokenType scan() throws CompilerException.LexerException {
+            tokenType = null;
+            while (tokenType == null && currentPosition < end) {
+                currentPosition = skipBlank(currentPosition);
+                if (currentPosition >= end)
+                    break;
+                start = currentPosition;
+                scanToken(advance());
+            }
+            if (tokenType == null) {
                 start = currentPosition;
-                var ch = advance();
-
-                switch (ch) {
-                    case ',':
-                        addToken(TokenType.COMMA, null);
-                        break;
-                    case ';':
-                        addToken(TokenType.SEMICOLON, null);
-                        break;
-                    case '(':
-                        addToken(TokenType.LEFT_PAREN, null);
-                        break;
-                    case ')':
-                        addToken(TokenType.RIGHT_PAREN, null);
-                        break;
-                    case '{':
-                        addToken(TokenType.LEFT_BRACE, null);
-                        break;
-                    case '}':
-                        addToken(TokenType.RIGHT_BRACE, null);
-                        break;
-                    case '[':
-                        addToken(TokenType.LEFT_BRACKET, null);
-                        break;
-                    case ']':
-                        addToken(TokenType.RIGHT_BRACKET, null);
-                        break;
-
-                    case '+':
-                        addToken(isMatch('=') ? TokenType.ASSIGNPLUS : TokenType.PLUS, null);
-                        break;
-                    case '-':
-                        addToken(isMatch('=') ? TokenType.ASSIGNMINUS : TokenType.MINUS, null);
-                        break;
-                    case '*':
-                        addToken(isMatch('=') ? TokenType.ASSIGNMULTIPLE : TokenType.MULTIPLE, null);
-                        break;
-                    case '/':
-                        if (isMatch('/')) {
-                            while (peekChar() != '\n' && !isAtEnd())
-                                advance();
-                        } else addToken(isMatch('=') ? TokenType.ASSIGNDIVIDE : TokenType.DIVIDE, null);
-                        break;
-
-                    case '!':
-                        addToken(isMatch('=') ? TokenType.NOTEQUAL : TokenType.NOT, null);
-                        break;
-                    case '=':
-                        addToken(isMatch('=') ? TokenType.EQUAL : TokenType.ASSIGN, null);
-                        break;
-                    case '>':
-                        addToken(isMatch('=') ? TokenType.GREATEREQUAL : TokenType.GREATER, null);
-                        break;
-                    case '<':
-                        addToken(isMatch('=') ? TokenType.LESSEQUAL : TokenType.LESS, null);
-                        break;
-                    case '&':
-                        if (isMatch('&'))
-                            addToken(TokenType.AND, null);
-                        else CompilerException.lexerError("Ожидается &&", getCurrentPosition());
-                        break;
-                    case '|':
-                        if (isMatch('|'))
-                            addToken(TokenType.OR, null);
-                        else CompilerException.lexerError("Ожидается ||", getCurrentPosition());
-                        break;
-                    case '\r':
-                        break;
-                    case '\7':
-                        break;
-                    case ' ':
-                        break;
-                    case '\n':
-                        line += 1;
-                        column = 1;
-                        position0 = currentPosition;
-                        break;
-                    case '"':
-                        getString();
-                        break;
-
-                    default:
-                        if (Character.isDigit(ch))
-                            getNumber();
-                        else if (isAlpha(ch))
-                            identifier();
-                        else CompilerException.lexerError("Неизвестный символ " + ch, getCurrentPosition());
-                        break;
+                addToken(TokenType.EOF);
+            }
+            return tokenType;
+        }
+
+        /// Быстрый путь мимо switch: пропустить подряд идущие пробелы, переводы строк и комментарии.
+        /// Тело комментария пропускается через String.indexOf, который JIT выполняет векторными инструкциями,
+        /// отступ после перевода строки - через SourceText.skipSpaces, тоже сериями символов
+        private int skipBlank(int pos) {
+            while (pos < end) {
+                char ch = code.charAt(pos);
+                if (ch == '\n')
+                    pos = SourceText.skipSpaces(code, pos + 1, end);
+                else if (ch == ' ' || ch == '\r' || ch == '\7')
+                    pos++;
+                else if (ch == '/' && pos + 1 < code.length() && code.charAt(pos + 1) == '/') {
+                    int newLine = SourceText.indexOf(code, '\n', pos + 2);
+                    pos = newLine < 0 ? code.length() : newLine;
                 }
+                else break;
+            }
+            return pos;
+        }
+
+        private void scanToken(char ch) throws CompilerException.LexerException {
+            switch (ch) {
+                case ',':
+                    addToken(TokenType.COMMA);
+                    break;
+                case ';':
+                    addToken(TokenType.SEMICOLON);
+                    break;
+                case '(':
+                    addToken(TokenType.LEFT_PAREN);
+                    break;
+                case ')':
+                    addToken(TokenType.RIGHT_PAREN);
+                    break;
+                case '{':
+                    addToken(TokenType.LEFT_BRACE);
+                    break;
+                case '}':
+                    addToken(TokenType.RIGHT_BRACE);
+                    break;
+                case '[':
+                    addToken(TokenType.LEFT_BRACKET);
+                    break;
+                case ']':
+                    addToken(TokenType.RIGHT_BRACKET);
+                    break;
+
+                case '+':
+                    addToken(isMatch('=') ? TokenType.ASSIGNPLUS : TokenType.PLUS);
+                    break;
+                case '-':
+                    addToken(isMatch('=') ? TokenType.ASSIGNMINUS : TokenType.MINUS);
+                    break;
+                case '*':
+                    addToken(isMatch('=') ? TokenType.ASSIGNMULTIPLE : TokenType.MULTIPLE);
+                    break;
+                case '/':
+                    if (isMatch('/')) {
+                        while (peekChar() != '\n' && !isAtEnd())
+                            advance();
+                    } else addToken(isMatch('=') ? TokenType.ASSIGNDIVIDE : TokenType.DIVIDE);
+                    break;
+
+                case '!':
+                    addToken(isMatch('=') ? TokenType.NOTEQUAL : TokenType.NOT);
+                    break;
+                case '=':
+                    addToken(isMatch('=') ? TokenType.EQUAL : TokenType.ASSIGN);
+                    break;
+                case '>':
+                    addToken(isMatch('=') ? TokenType.GREATEREQUAL : TokenType.GREATER);
+                    break;
+                case '<':
+                    addToken(isMatch('=') ? TokenType.LESSEQUAL : TokenType.LESS);
+                    break;
+                case '&':
+                    if (isMatch('&'))
+                        addToken(TokenType.AND);
+                    else CompilerException.lexerError("Ожидается &&", getCurrentPosition());
+                    break;
+                case '|':
+                    if (isMatch('|'))
+                        addToken(TokenType.OR);
+                    else CompilerException.lexerError("Ожидается ||", getCurrentPosition());
+                    break;
+                case '\r':
+                    break;
+                case '\7':
+                    break;
+                case ' ':
+                    break;
+                case '\n':
+                    break;
+                case '"':
+                    getString();
+                    break;
+
+                default:
+                    if (isDigit(ch))
+                        getNumber();
+                    else if (isAlpha(ch))
+                        identifier();
+                    else CompilerException.lexerError("Неизвестный символ " + ch, getCurrentPosition());
+                    break;
             }
-            addToken(TokenType.EOF, null);
         }
     }
 }
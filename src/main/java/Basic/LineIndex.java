@@ -0,0 +1,73 @@
+package Basic;
+
+import java.util.Arrays;
+
+/// Таблица начал строк текста. Строится один раз, при первом запросе,
+/// за один проход; дальше строка по смещению ищется двоичным поиском.
+public class LineIndex {
+    private final CharSequence text;
+    private int[] lineStarts;//Смещения начал строк, lineStarts[0] == 0
+    private int lineCount;
+    private int lastLine;//Последняя найденная строка (с нуля): позиции чаще всего запрашивают подряд
+
+    public LineIndex(CharSequence text) {
+        this.text = text;
+    }
+
+    private void build() {
+        var starts = new int[64];
+        int count = 1;
+        // indexOf JIT выполняет векторными инструкциями, это быстрее посимвольного цикла
+        for (int i = SourceText.indexOf(text, '\n', 0); i >= 0; i = SourceText.indexOf(text, '\n', i + 1)) {
+            if (count == starts.length)
+                starts = Arrays.copyOf(starts, count * 2);
+            starts[count++] = i + 1;
+        }
+        lineStarts = starts;
+        lineCount = count;
+    }
+
+    public int lineCount() {
+        if (lineStarts == null) build();
+        return lineCount;
+    }
+
+    /// Номер строки (с единицы), в которой находится смещение offset
+    public int lineOf(int offset) {
+        if (lineStarts == null) build();
+        if (offset < 0 || offset > text.length())
+            throw new IndexOutOfBoundsException("Смещение " + offset + " вне текста");
+
+        int line = lastLine;
+        if (lineStarts[line] <= offset && (line + 1 == lineCount || offset < lineStarts[line + 1]))
+            return line + 1;
+
+        int found = Arrays.binarySearch(lineStarts, 0, lineCount, offset);
+        line = found >= 0 ? found : -found - 2;
+        lastLine = line;
+        return line + 1;
+    }
+
+    /// Смещение начала строки line (с единицы)
+    public int lineStart(int line) {
+        if (lineStarts == null) build();
+        return lineStarts[line - 1];
+    }
+
+    /// Столбец (с единицы) смещения offset
+    public int columnOf(int offset) {
+        return offset - lineStart(lineOf(offset)) + 1;
+    }
+
+    public Position positionOf(int offset) {
+        int line = lineOf(offset);
+        return new Position(line, offset - lineStart(line) + 1);
+    }
+
+    /// Текст строки line (с единицы) без перевода строки
+    public String line(int line) {
+        int start = lineStart(line);
+        int end = line < lineCount ? lineStarts[line] - 1 : text.length();
+        return text.subSequence(start, end).toString();
+    }
+}
@@ -0,0 +1,71 @@
+package Basic;
+
+import java.util.Arrays;
+
+/// Таблица имен одной компиляции. Каждое различное имя получает плотный
+/// номер (0, 1, 2, ...) в момент лексического анализа; по этому номеру
+/// последующие проходы находят символы индексом в массиве.
+/// Имя ищется прямо по диапазону символов исходника, поэтому строка создается
+/// (и интернируется) один раз на каждое различное имя, а не на каждое вхождение.
+public class NameTable {
+    private int[] slots = new int[64]; // открытая адресация: номер имени + 1, 0 - пусто
+    private String[] names = new String[32];
+    private int size;
+
+    public int size() { return size; }
+
+    /// Имя по его номеру
+    public String name(int id) { return names[id]; }
+
+    /// Номер имени text[start, end); новое имя получает следующий номер
+    public int id(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        int mask = slots.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int slot = slots[i];
+            if (slot == 0) {
+                int id = size++;
+                if (id == names.length)
+                    names = Arrays.copyOf(names, id * 2);
+                names[id] = text.subSequence(start, end).toString().intern();
+                slots[i] = id + 1;
+                if (size * 2 > slots.length)
+                    rehash();
+                return id;
+            }
+            if (equals(names[slot - 1], text, start, end))
+                return slot - 1;
+        }
+    }
+
+    public String intern(CharSequence text, int start, int end) {
+        return names[id(text, start, end)];
+    }
+
+    private static int hash(CharSequence text, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++)
+            h = 31 * h + text.charAt(i);
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean equals(String name, CharSequence text, int start, int end) {
+        if (name.length() != end - start)
+            return false;
+        for (int i = 0; i < name.length(); i++)
+            if (name.charAt(i) != text.charAt(start + i))
+                return false;
+        return true;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int i = hash(names[id], 0, names[id].length()) & mask;
+            while (slots[i] != 0)
+                i = (i + 1) & mask;
+            slots[i] = id + 1;
+        }
+    }
+}
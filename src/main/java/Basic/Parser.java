@@ -3,28 +3,208 @@ package Basic;
 import ExceptionLogic.CompilerException;
 
 import java.math.BigInteger;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class Parser extends ParserBase {
+    // Множества токенов для at/requires: проверка - одна битовая операция
+    private static final long ASSIGN_OPS = tokenSet(LexerUnit.TokenType.ASSIGN, LexerUnit.TokenType.ASSIGNPLUS,
+            LexerUnit.TokenType.ASSIGNMULTIPLE, LexerUnit.TokenType.ASSIGNMINUS, LexerUnit.TokenType.ASSIGNDIVIDE);
+    private static final long STATEMENT_START = tokenSet(LexerUnit.TokenType.IF, LexerUnit.TokenType.WHILE,
+            LexerUnit.TokenType.FOR, LexerUnit.TokenType.LEFT_BRACE, LexerUnit.TokenType.ID);
+
+    // Приоритеты бинарных операций по ordinal типа токена; 0 - не бинарная операция.
+    // Все операции левоассоциативны. Новая операция - новая строка в таблице
+    private static final int COMPARE = 1;
+    private static final int ADD = 2;
+    private static final int MULTIPLY = 3;
+    private static final byte[] Precedence = new byte[LexerUnit.TokenTypes.length];
+    static {
+        for (var type : new LexerUnit.TokenType[]{LexerUnit.TokenType.LESS, LexerUnit.TokenType.GREATER,
+                LexerUnit.TokenType.GREATEREQUAL, LexerUnit.TokenType.LESSEQUAL,
+                LexerUnit.TokenType.EQUAL, LexerUnit.TokenType.NOTEQUAL})
+            Precedence[type.ordinal()] = COMPARE;
+        for (var type : new LexerUnit.TokenType[]{LexerUnit.TokenType.PLUS, LexerUnit.TokenType.MINUS, LexerUnit.TokenType.OR})
+            Precedence[type.ordinal()] = ADD;
+        for (var type : new LexerUnit.TokenType[]{LexerUnit.TokenType.MULTIPLE, LexerUnit.TokenType.DIVIDE, LexerUnit.TokenType.AND})
+            Precedence[type.ordinal()] = MULTIPLY;
+    }
+
+    private final ArrayDeque<Frame> frames = new ArrayDeque<>();//Незаконченные составные операторы для statement
+    private int expressionDepth;//Сколько expr, скобок, индексов, вызовов и литералов массивов сейчас разбирается
+
+    // Стек незаконченных операций и скобок для binary
+    private byte[] pendingPrecedence = new byte[16];
+    private ASTNodes.ExprNode[] pendingLeft = new ASTNodes.ExprNode[16];
+    private LexerUnit.TokenType[] pendingOp = new LexerUnit.TokenType[16];
+    private ASTNodes.ExprNode[] pendingOpen = new ASTNodes.ExprNode[16];//Индекс, вызов или литерал массива, ждущий выражение
+    private int pendingCount;
+
     public Parser(LexerUnit.Lexer lexer) throws Exception {
         super(lexer);
     }
 
+    public Parser(LexerUnit.Lexer lexer, boolean recovery) throws Exception {
+        super(lexer, recovery);
+    }
+
+    public Parser(LexerUnit.Lexer lexer, TokenBuffer buffer, int from) throws Exception {
+        super(lexer, buffer, from);
+    }
+
     /// Program := StatementList
     public ASTNodes.StatementNode mainProgram() throws Exception {
-        current = 0;
         var res = statementList();
         requires(LexerUnit.TokenType.EOF);
         return res;
     }
 
+    // Меньше этого числа токенов кусок не делаем: на маленьких кусках накладные расходы больше выигрыша
+    private static final int MIN_SLICE = 1 << 14;
+
+    /// То же, что mainProgram(), но операторы верхнего уровня разбираются кусками параллельно в pool.
+    /// Текст сначала целиком лексируется, затем токены режутся по ';' вне скобок.
+    /// Дерево, номера имен и первая ошибка совпадают с последовательным разбором
+    public ASTNodes.StatementNode mainProgram(ForkJoinPool pool) throws Exception {
+        // Без параллельности отдельный проход лексера - чистые накладные расходы.
+        // Восстановление после ошибок идет только последовательно
+        if (pool.getParallelism() < 2 || recovery)
+            return mainProgram();
+        var all = new LexerUnit.Lexer(lexer.code, tokens.start(0), lexer.code.length(), lexer.names);
+        try {
+            all.analizeParallel(pool);
+        } catch (CompilerException.LexerException | RuntimeException e) {
+            // Последовательный разбор сообщит то, что встретится раньше: эту ошибку или синтаксическую
+            return mainProgram();
+        }
+        var buffer = all.tokens();
+        all.lineIndex();//Строится заранее: куски читают позиции из разных потоков
+
+        var bounds = sliceBounds(buffer, Math.min(pool.getParallelism() * 4, buffer.size() / MIN_SLICE));
+        var slices = new ArrayList<Slice>(bounds.length + 1);
+        int from = 0;
+        for (int to : bounds) {
+            slices.add(new Slice(all, buffer, from, to, from == 0));
+            from = to;
+        }
+        slices.add(new Slice(all, buffer, from, buffer.size(), from == 0));
+        for (var slice : slices)
+            pool.execute(slice);
+
+        // Куски сшиваются по порядку. Кусок разобран верно, если начинается там, где остановился предыдущий;
+        // иначе граница попала внутрь оператора (например, ';' в заголовке for без скобок),
+        // и кусок разбирается заново с правильного места
+        var res = new ASTNodes.StatementListNode();
+        int expected = 0;
+        for (var slice : slices) {
+            slice.join();
+            if (slice.from != expected) {
+                if (expected >= slice.to)
+                    continue;
+                slice = new Slice(all, buffer, expected, slice.to, false);
+                slice.compute();
+            }
+            slice.rethrow();
+            res.statements.addAll(slice.statements.statements);
+            expected = slice.stop;
+        }
+        var rest = new Parser(all, buffer, expected);
+        if (!rest.isAtEnd())
+            rest.expectedError(LexerUnit.TokenType.EOF);
+        return res;
+    }
+
+    /// Номера ';' вне скобок, ближайших к равным долям буфера (не больше count - 1 границ)
+    private static int[] sliceBounds(TokenBuffer buffer, int count) {
+        if (count < 2)
+            return new int[0];
+        var bounds = new int[count - 1];
+        int found = 0;
+        int depth = 0;
+        for (int i = 0; i < buffer.size() && found < bounds.length; i++) {
+            switch (buffer.type(i)) {
+                case LEFT_BRACE, LEFT_PAREN, LEFT_BRACKET -> depth++;
+                case RIGHT_BRACE, RIGHT_PAREN, RIGHT_BRACKET -> depth--;
+                case SEMICOLON -> {
+                    if (depth == 0 && i >= (long) buffer.size() * (found + 1) / count)
+                        bounds[found++] = i;
+                }
+                default -> {}
+            }
+        }
+        return Arrays.copyOf(bounds, found);
+    }
+
+    /// Операторы верхнего уровня между токенами from и to. Первый кусок начинается с оператора,
+    /// остальные - с ';' перед ним, как продолжение StatementList; ';' с номером to и дальше не берется.
+    /// Задача живет только внутри mainProgram(pool) и не сериализуется, поэтому поля transient
+    private static class Slice extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        final transient LexerUnit.Lexer lexer;
+        final transient TokenBuffer buffer;
+        final int from;
+        final int to;
+        final boolean first;
+        final transient ASTNodes.StatementListNode statements = new ASTNodes.StatementListNode();
+        int stop;//Номер токена, на котором кусок остановился
+        private transient RuntimeException failure;
+        private transient Exception error;
+
+        Slice(LexerUnit.Lexer lexer, TokenBuffer buffer, int from, int to, boolean first) {
+            this.lexer = lexer;
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+            this.first = first;
+        }
+
+        @Override
+        protected void compute() {
+            // Ошибки запоминаются: кусок может оказаться разобранным не с того места, и тогда они не нужны
+            try {
+                var parser = new Parser(lexer, buffer, from);
+                if (first)
+                    statements.add(parser.statement());
+                while (parser.at(LexerUnit.TokenType.SEMICOLON) && parser.tokens.index() < to) {
+                    parser.nextLexem();
+                    statements.add(parser.statement());
+                }
+                stop = parser.tokens.index();
+            } catch (RuntimeException e) {
+                failure = e;
+            } catch (Exception e) {
+                error = e;
+            }
+        }
+
+        void rethrow() throws Exception {
+            if (error != null) throw error;
+            if (failure != null) throw failure;
+        }
+    }
+
     /// StatementList := Statement (';' Statement)*
     public ASTNodes.StatementNode statementList() throws Exception {
         var res = new ASTNodes.StatementListNode();
         res.add(statement());
-        while (at(LexerUnit.TokenType.SEMICOLON)) {
-            nextLexem();
-            res.add(statement());
+        while (true) {
+            if (at(LexerUnit.TokenType.SEMICOLON)) {
+                skipLexem();
+                res.add(statement());
+            }
+            else if (recovery && !isAtEnd()) {
+                // Лишние токены после оператора: та же ошибка, что у requires(EOF) в mainProgram
+                report(new CompilerException.SyntaxException("EOF ожидалось, но " + tokens.type().name() + " найдено", currentPosition()));
+                if (at(LexerUnit.TokenType.RIGHT_BRACE))
+                    skipLexem();//Лишняя '}' считается разделителем
+                else synchronize();
+                if (at(STATEMENT_START))
+                    res.add(statement());
+            }
+            else break;
         }
         return res;
     }
@@ -35,68 +215,168 @@ public class Parser extends ParserBase {
     /// if expr then stat [else stat]
     /// while expr do stat
     /// { statlist }
+    /// Вложенные операторы разбираются без рекурсии: незаконченные if, while, for и {}
+    /// лежат в явном стеке frames, так что глубина вложенности ограничена maxNesting, а не стеком потока
     public ASTNodes.StatementNode statement() throws Exception {
-        var pos = currentToken().position;
-        if(at(LexerUnit.TokenType.IF)){
-            nextLexem();
-            var cond = expr();
-            requires(LexerUnit.TokenType.THEN);
-            var thenStatement = statement();
-            ASTNodes.StatementNode elseStatement = null;
-            if(at(LexerUnit.TokenType.ELSE)){
-                nextLexem();
-                elseStatement = statement();
+        frames.clear();//После ошибки в стеке могли остаться операторы
+        while (true) {
+            // Спуск: заголовки составных операторов уходят в стек, пока не встретится простой оператор
+            ASTNodes.StatementNode statement;
+            try {
+                statement = openStatements();
+            } catch (CompilerException.BaseCompilerException e) {
+                statement = recover(e);//Испорченный оператор становится null
+            }
+            // Подъем: готовый оператор отдается незаконченному, пока тому не понадобится следующий
+            while (true) {
+                if (frames.isEmpty())
+                    return statement;
+                var frame = frames.peek();
+                try {
+                    statement = closeStatement(frame, statement);
+                } catch (CompilerException.BaseCompilerException e) {
+                    statement = recover(e);
+                    // Блок продолжается после точки синхронизации, остальные операторы испорчены целиком
+                    if (frame.kind == LexerUnit.TokenType.LEFT_BRACE && !isAtEnd()) {
+                        if (!at(LexerUnit.TokenType.RIGHT_BRACE)) {
+                            if (at(LexerUnit.TokenType.SEMICOLON))
+                                skipLexem();
+                            break;
+                        }
+                        skipLexem();
+                        frame.list.position = frame.position;
+                        statement = frame.list;
+                    }
+                    frames.pop();
+                    continue;
+                }
+                if (statement == null)
+                    break;
+                frames.pop();
             }
-            return new ASTNodes.IfNode(cond, thenStatement, elseStatement, pos);
-        }
-        else if(at(LexerUnit.TokenType.WHILE)){
-            nextLexem();
-            var cond = expr();
-            requires(LexerUnit.TokenType.DO);
-            var statement = statement();
-            return new ASTNodes.WhileNode(cond, statement, pos);
         }
-        else if(at(LexerUnit.TokenType.FOR)){
-            nextLexem();
-
-            boolean hasParen = at(LexerUnit.TokenType.LEFT_PAREN);
-            if (hasParen) nextLexem();
-
-            var start = statement();
-            requires(LexerUnit.TokenType.SEMICOLON);
-            var cond = expr();
-            requires(LexerUnit.TokenType.SEMICOLON);
-            var increment = statement();
+    }
 
-            if (hasParen) requires(LexerUnit.TokenType.RIGHT_PAREN);
+    /// В режиме восстановления запомнить ошибку и перейти к точке синхронизации, иначе бросить ее
+    private ASTNodes.StatementNode recover(CompilerException.BaseCompilerException error) throws Exception {
+        if (!recovery)
+            throw error;
+        report(error);
+        // Ошибка могла прервать разбор выражения на середине
+        expressionDepth = 0;
+        Arrays.fill(pendingLeft, 0, pendingCount, null);
+        Arrays.fill(pendingOpen, 0, pendingCount, null);
+        pendingCount = 0;
+        synchronize();
+        return null;
+    }
 
-            requires(LexerUnit.TokenType.DO);
-            var body = statement();
-            return new ASTNodes.ForNode(start, cond, increment, body, pos);
+    /// Незаконченный составной оператор, ожидающий вложенный оператор номер stage
+    private static class Frame {
+        final LexerUnit.TokenType kind;//IF, WHILE, FOR или LEFT_BRACE
+        final Position position;
+        int stage;
+        ASTNodes.ExprNode cond;
+        ASTNodes.StatementNode first;//then у if, start у for
+        ASTNodes.StatementNode second;//increment у for
+        boolean hasParen;
+        ASTNodes.StatementListNode list;
+
+        Frame(LexerUnit.TokenType kind, Position position) {
+            this.kind = kind;
+            this.position = position;
         }
-        else if(at(LexerUnit.TokenType.LEFT_BRACE)){
+    }
+
+    /// Разобрать заголовки составных операторов до первого простого оператора и вернуть его
+    private ASTNodes.StatementNode openStatements() throws Exception {
+        while (true) {
+            var pos = currentPosition();
+            var kind = tokens.type();
+            if (kind != LexerUnit.TokenType.IF && kind != LexerUnit.TokenType.WHILE
+                    && kind != LexerUnit.TokenType.FOR && kind != LexerUnit.TokenType.LEFT_BRACE)
+                return simpleStatement(pos);
+            if (frames.size() >= maxNesting)
+                nestingError();
+            var frame = new Frame(kind, pos);
             nextLexem();
-            var stl = statementList();
-            requires(LexerUnit.TokenType.RIGHT_BRACE);
-            stl.position = pos;
-            return stl;
+            if (kind == LexerUnit.TokenType.IF) {
+                frame.cond = expr();
+                requires(LexerUnit.TokenType.THEN);
+            }
+            else if (kind == LexerUnit.TokenType.WHILE) {
+                frame.cond = expr();
+                requires(LexerUnit.TokenType.DO);
+            }
+            else if (kind == LexerUnit.TokenType.FOR) {
+                frame.hasParen = at(LexerUnit.TokenType.LEFT_PAREN);
+                if (frame.hasParen) nextLexem();
+            }
+            else frame.list = new ASTNodes.StatementListNode();
+            frames.push(frame);
         }
+    }
 
+    /// Отдать вложенный оператор незаконченному. Вернуть готовый оператор
+    /// или null, если дальше разбирается следующий вложенный оператор
+    private ASTNodes.StatementNode closeStatement(Frame frame, ASTNodes.StatementNode statement) throws Exception {
+        switch (frame.kind) {
+            case IF:
+                if (frame.stage == 0) {
+                    frame.first = statement;
+                    if (at(LexerUnit.TokenType.ELSE)) {
+                        nextLexem();
+                        frame.stage = 1;
+                        return null;
+                    }
+                    return new ASTNodes.IfNode(frame.cond, frame.first, null, frame.position);
+                }
+                return new ASTNodes.IfNode(frame.cond, frame.first, statement, frame.position);
+            case WHILE:
+                return new ASTNodes.WhileNode(frame.cond, statement, frame.position);
+            case FOR:
+                if (frame.stage == 0) {
+                    frame.first = statement;
+                    requires(LexerUnit.TokenType.SEMICOLON);
+                    frame.cond = expr();
+                    requires(LexerUnit.TokenType.SEMICOLON);
+                    frame.stage = 1;
+                    return null;
+                }
+                if (frame.stage == 1) {
+                    frame.second = statement;
+                    if (frame.hasParen) requires(LexerUnit.TokenType.RIGHT_PAREN);
+                    requires(LexerUnit.TokenType.DO);
+                    frame.stage = 2;
+                    return null;
+                }
+                return new ASTNodes.ForNode(frame.first, frame.cond, frame.second, statement, frame.position);
+            default:
+                // { statlist }: как statementList, затем '}'
+                frame.list.add(statement);
+                if (at(LexerUnit.TokenType.SEMICOLON)) {
+                    nextLexem();
+                    return null;
+                }
+                requires(LexerUnit.TokenType.RIGHT_BRACE);
+                frame.list.position = frame.position;
+                return frame.list;
+        }
+    }
+
+    /// Присваивание или вызов процедуры
+    private ASTNodes.StatementNode simpleStatement(Position pos) throws Exception {
         if(at(LexerUnit.TokenType.ID) && peekNextTokenType() == LexerUnit.TokenType.LEFT_BRACKET){
             var access = arrayAccess();
-            if(at(LexerUnit.TokenType.ASSIGN,
-                    LexerUnit.TokenType.ASSIGNPLUS,
-                    LexerUnit.TokenType.ASSIGNMULTIPLE,
-                    LexerUnit.TokenType.ASSIGNMINUS,
-                    LexerUnit.TokenType.ASSIGNDIVIDE)){
+            if(at(ASSIGN_OPS)){
 
                 var operator = nextLexem();
                 var expr = expr();
 
-                if(operator.type == LexerUnit.TokenType.ASSIGN) {
+                if(operator == LexerUnit.TokenType.ASSIGN) {
                     return new ASTNodes.ArrayAssignNode(access.array, access.index, expr, pos);
                 } else {
-                    var op = getAssignOpChar(operator.type);
+                    var op = getAssignOpChar(operator);
                     return new ASTNodes.ArrayAssignOperationNode(access.array, access.index, expr, op, pos);
                 }
             }
@@ -138,13 +418,6 @@ public class Parser extends ParserBase {
         return null;
     }
 
-    private LexerUnit.TokenType peekNextTokenType() {
-        if (current + 1 < tokens.size()) {
-            return tokens.get(current + 1).type;
-        }
-        return LexerUnit.TokenType.EOF;
-    }
-
     private char getAssignOpChar(LexerUnit.TokenType type) {
         switch (type) {
             case ASSIGNPLUS: return '+';
@@ -156,7 +429,7 @@ public class Parser extends ParserBase {
     }
 
     private ASTNodes.ArrayAccessNode arrayAccess() throws Exception {
-        var pos = currentToken().position;
+        var pos = currentPosition();
         var id = ident();
         requires(LexerUnit.TokenType.LEFT_BRACKET);
         var index = expr();
@@ -165,7 +438,7 @@ public class Parser extends ParserBase {
     }
 
     public ASTNodes.ArrayLiteralNode arrayLiteral() throws Exception {
-        var pos = currentToken().position;
+        var pos = currentPosition();
         requires(LexerUnit.TokenType.LEFT_BRACKET);
         var elements = new ArrayList<ASTNodes.ExprNode>();
 
@@ -184,7 +457,7 @@ public class Parser extends ParserBase {
 
     /// ArrayDeclaration := 'array' Id ('[' Expr ']')? ('=' ArrayLiteral)?
     public ASTNodes.ArrayDeclarationNode arrayDeclaration() throws Exception {
-        var pos = currentToken().position;
+        var pos = currentPosition();
         var id = ident();
         ASTNodes.ExprNode size = null;
         var initialElements = new ArrayList<ASTNodes.ExprNode>();
@@ -206,20 +479,137 @@ public class Parser extends ParserBase {
     }
 
     public ASTNodes.ExprNode expr() throws Exception {
-        var expr = comp();
-        while (at(LexerUnit.TokenType.LESS, LexerUnit.TokenType.GREATER,
-                LexerUnit.TokenType.GREATEREQUAL, LexerUnit.TokenType.LESSEQUAL,
-                LexerUnit.TokenType.EQUAL, LexerUnit.TokenType.NOTEQUAL)) {
-            var op = nextLexem();
-            var right = comp();
-            expr = new ASTNodes.BinOpNode(expr, right, op.type, expr.position);
-        }
+        if (++expressionDepth > maxNesting)
+            nestingError();
+        var expr = binary();
+        expressionDepth--;
         return expr;
     }
 
+    /// Разбор методом восходящих приоритетов: операнд, затем операции с приоритетом не ниже текущего.
+    /// Цепочка операций одного уровня собирается циклом в левое дерево. Вместо рекурсии
+    /// за правым операндом, выражением в скобках, индексом, аргументом вызова или элементом
+    /// литерала массива незаконченная операция или открытый узел кладется в стек pending*,
+    /// так что глубина вложенности выражений не ограничена стеком потока
+    private ASTNodes.ExprNode binary() throws Exception {
+        int base = pendingCount;//Ниже лежат незаконченные операции внешнего expr
+        int minPrecedence = COMPARE;
+        operand:
+        while (true) {
+            ASTNodes.ExprNode expr;
+            // Как и раньше, выражение сравнения или его правая часть в конце кода пусты
+            if (minPrecedence <= ADD && isAtEnd())
+                expr = null;
+            else if (at(LexerUnit.TokenType.LEFT_PAREN)) {
+                if (++expressionDepth > maxNesting)
+                    nestingError();
+                nextLexem();
+                push(minPrecedence, null, null, null);
+                minPrecedence = COMPARE;
+                continue;
+            }
+            else if (at(LexerUnit.TokenType.LEFT_BRACKET)) {
+                var literal = new ASTNodes.ArrayLiteralNode(new ArrayList<>(), currentPosition());
+                nextLexem();
+                if (at(LexerUnit.TokenType.RIGHT_BRACKET)) {
+                    nextLexem();
+                    expr = literal;
+                }
+                else {
+                    open(minPrecedence, literal);
+                    minPrecedence = COMPARE;
+                    continue;
+                }
+            }
+            else {
+                expr = factor();
+                // Индекс или вызов ждет в стеке, пока разбираются его выражения
+                if (expr instanceof ASTNodes.IdNode id
+                        && (at(LexerUnit.TokenType.LEFT_BRACKET) || at(LexerUnit.TokenType.LEFT_PAREN))) {
+                    ASTNodes.ExprNode node = at(LexerUnit.TokenType.LEFT_BRACKET)
+                            ? new ASTNodes.ArrayAccessNode(id, null, id.position)
+                            : new ASTNodes.FuncCallNode(id, new ASTNodes.ExprListNode(), id.position);
+                    nextLexem();
+                    open(minPrecedence, node);
+                    minPrecedence = COMPARE;
+                    continue;
+                }
+            }
+
+            while (true) {
+                int precedence = Precedence[tokens.type().ordinal()];
+                if (precedence >= minPrecedence) {
+                    push(minPrecedence, expr, nextLexem(), null);
+                    minPrecedence = precedence + 1;
+                    continue operand;
+                }
+                if (pendingCount == base)
+                    return expr;
+                // Операнд готов: закрыть верхнюю скобку или операцию и продолжить на ее уровне
+                pendingCount--;
+                minPrecedence = pendingPrecedence[pendingCount];
+                var left = pendingLeft[pendingCount];
+                var op = pendingOp[pendingCount];
+                var open = pendingOpen[pendingCount];
+                pendingLeft[pendingCount] = null;
+                pendingOpen[pendingCount] = null;
+                if (op != null) {
+                    expr = new ASTNodes.BinOpNode(left, expr, op, left.position);
+                    continue;
+                }
+                if (open == null)
+                    requires(LexerUnit.TokenType.RIGHT_PAREN);
+                else if (open instanceof ASTNodes.ArrayAccessNode access) {
+                    requires(LexerUnit.TokenType.RIGHT_BRACKET);
+                    access.index = expr;
+                    expr = access;
+                }
+                else {
+                    boolean call = open instanceof ASTNodes.FuncCallNode;
+                    if (call)
+                        ((ASTNodes.FuncCallNode) open).pars.add(expr);
+                    else ((ASTNodes.ArrayLiteralNode) open).elements.add(expr);
+                    // После запятой узел снова ждет в стеке следующее выражение
+                    if (at(LexerUnit.TokenType.COMMA)) {
+                        nextLexem();
+                        push(minPrecedence, null, null, open);
+                        minPrecedence = COMPARE;
+                        continue operand;
+                    }
+                    requires(call ? LexerUnit.TokenType.RIGHT_PAREN : LexerUnit.TokenType.RIGHT_BRACKET);
+                    expr = open;
+                }
+                expressionDepth--;
+            }
+        }
+    }
+
+    /// Открыть индекс, вызов или литерал массива: как и скобка, он считается уровнем вложенности
+    private void open(int minPrecedence, ASTNodes.ExprNode node) throws Exception {
+        if (++expressionDepth > maxNesting)
+            nestingError();
+        push(minPrecedence, null, null, node);
+    }
+
+    /// Запомнить незаконченную операцию left op ..., открытую скобку (op == null)
+    /// или открытый узел open, которому не хватает выражения
+    private void push(int minPrecedence, ASTNodes.ExprNode left, LexerUnit.TokenType op, ASTNodes.ExprNode open) {
+        if (pendingCount == pendingOp.length) {
+            pendingPrecedence = Arrays.copyOf(pendingPrecedence, pendingCount * 2);
+            pendingLeft = Arrays.copyOf(pendingLeft, pendingCount * 2);
+            pendingOp = Arrays.copyOf(pendingOp, pendingCount * 2);
+            pendingOpen = Arrays.copyOf(pendingOpen, pendingCount * 2);
+        }
+        pendingPrecedence[pendingCount] = (byte) minPrecedence;
+        pendingLeft[pendingCount] = left;
+        pendingOp[pendingCount] = op;
+        pendingOpen[pendingCount] = open;
+        pendingCount++;
+    }
+
     public ASTNodes.IdNode ident() throws Exception {
-        var id = requires(LexerUnit.TokenType.ID);
-        return new ASTNodes.IdNode(id.value.toString(), id.position);
+        requires(LexerUnit.TokenType.ID);
+        return new ASTNodes.IdNode(previousText(), (int) previousPayload(), previousPosition());
     }
 
     public ASTNodes.ExprListNode exprList() throws Exception {
@@ -232,66 +622,26 @@ public class Parser extends ParserBase {
         return exprList;
     }
 
-    public ASTNodes.ExprNode comp() throws Exception {
-        if (isAtEnd()) return null;
-        var expr = term();
-        while (at(LexerUnit.TokenType.PLUS, LexerUnit.TokenType.MINUS, LexerUnit.TokenType.OR)) {
-            var op = nextLexem();
-            var right = term();
-            expr = new ASTNodes.BinOpNode(expr, right, op.type, expr.position);
-        }
-        return expr;
-    }
+    /// Число или имя; индексы, вызовы и литералы массивов разбирает binary
+    public ASTNodes.ExprNode factor() throws Exception {
+        var position = currentPosition();
 
-    public ASTNodes.ExprNode term() throws Exception {
-        var expr = factor();
-        while (at(LexerUnit.TokenType.MULTIPLE, LexerUnit.TokenType.DIVIDE, LexerUnit.TokenType.AND)) {
-            var op = nextLexem();
-            var right = factor();
-            expr = new ASTNodes.BinOpNode(expr, right, op.type, expr.position);
+        if (at(LexerUnit.TokenType.INT)) {
+            nextLexem();
+            return new ASTNodes.IntNode((int) previousPayload(), position);
         }
-        return expr;
-    }
-
-    public ASTNodes.ExprNode factor() throws Exception {
-        var position = currentToken().position;
-
-        if(at(LexerUnit.TokenType.LEFT_BRACKET))
-            return arrayLiteral();
-        else if (at(LexerUnit.TokenType.INT))
-            return new ASTNodes.IntNode(Integer.parseInt(nextLexem().value.toString()), position);
-        else if (at(LexerUnit.TokenType.DOUBLELITERAL))
-            return new ASTNodes.DoubleNode(Double.parseDouble(nextLexem().value.toString()), position);
-        else if(at(LexerUnit.TokenType.BIGINTEGERLITERAL))
-            return new ASTNodes.BigIntNode(nextLexem().value.toString(), position);
-
-        else if (at(LexerUnit.TokenType.LEFT_PAREN)) {
+        else if (at(LexerUnit.TokenType.DOUBLELITERAL)) {
             nextLexem();
-            var res = expr();
-            requires(LexerUnit.TokenType.RIGHT_PAREN);
-            return res;
+            return new ASTNodes.DoubleNode(Double.longBitsToDouble(previousPayload()), position);
         }
-
-        else if (at(LexerUnit.TokenType.ID)) {
-            var id = ident();
-
-            // Доступ по индексу
-            if(at(LexerUnit.TokenType.LEFT_BRACKET)){
-                nextLexem();
-                var index = expr();
-                requires(LexerUnit.TokenType.RIGHT_BRACKET);
-                return new ASTNodes.ArrayAccessNode(id, index, position);
-            }
-            else if (at(LexerUnit.TokenType.LEFT_PAREN)) {
-                nextLexem();
-                var exprlst = exprList();
-                var res = new ASTNodes.FuncCallNode(id, exprlst, position);
-                requires(LexerUnit.TokenType.RIGHT_PAREN);
-                return res;
-            }
-            return id;
+        else if(at(LexerUnit.TokenType.BIGINTEGERLITERAL)) {
+            nextLexem();
+            return new ASTNodes.BigIntNode(previousText(), position);
         }
 
+        else if (at(LexerUnit.TokenType.ID))
+            return ident();
+
         else
             CompilerException.syntaxError("Exc" + peekToken().type.toString() + " найдено.", peekToken().position);
         return null;
@@ -7,33 +7,100 @@ import java.util.Arrays;
 
 public abstract class ParserBase {
     protected LexerUnit.Lexer lexer;
-    protected ArrayList<LexerUnit.Token> tokens;
-    protected int current;
+    protected TokenStream tokens;
+    public int maxNesting = 100_000;//Предел вложенности операторов и выражений, глубже - SyntaxException
+    public boolean recovery;//Режим восстановления: ошибки копятся в diagnostics, разбор продолжается
+    public final ArrayList<CompilerException.BaseCompilerException> diagnostics = new ArrayList<>();
+
+    // Точки синхронизации после ошибки: конец оператора или начало следующего
+    private static final long SYNC = tokenSet(LexerUnit.TokenType.SEMICOLON, LexerUnit.TokenType.RIGHT_BRACE,
+            LexerUnit.TokenType.EOF, LexerUnit.TokenType.IF, LexerUnit.TokenType.WHILE, LexerUnit.TokenType.FOR);
+
+    static {
+        if (LexerUnit.TokenTypes.length > Long.SIZE)
+            throw new IllegalStateException("Типов токенов больше, чем бит в long: множества токенов не поместятся");
+    }
+
+    /// Множество типов токенов как битовая маска: бит с номером ordinal
+    protected static long tokenSet(LexerUnit.TokenType... types) {
+        long set = 0;
+        for (var type : types)
+            set |= 1L << type.ordinal();
+        return set;
+    }
 
     public ParserBase(LexerUnit.Lexer lexer) throws Exception{
         this.lexer = lexer;
-        lexer.analize();
-        tokens = lexer.tokens;
+        tokens = new TokenStream(lexer);
+    }
+
+    /// Парсер в режиме восстановления (recovery = true) запоминает и ошибки лексера в первом токене
+    public ParserBase(LexerUnit.Lexer lexer, boolean recovery) throws Exception{
+        this.lexer = lexer;
+        this.recovery = recovery;
+        while (tokens == null) {
+            try {
+                tokens = new TokenStream(lexer);
+            } catch (CompilerException.LexerException e) {
+                if (!recovery)
+                    throw e;
+                report(e);
+            }
+        }
+    }
+
+    /// Парсер токенов, уже собранных лексером в buffer, начиная с токена номер from
+    public ParserBase(LexerUnit.Lexer lexer, TokenBuffer buffer, int from) throws Exception{
+        this.lexer = lexer;
+        tokens = new TokenStream(lexer, buffer, from);
     }
 
     /// Проверить, что тип текущего токена совпадает с данным типом
     public boolean check(LexerUnit.TokenType type){
-        return peekToken().type == type;
+        return tokens.type() == type;
     }
 
-    public LexerUnit.Token nextLexem() {
-        if (!isAtEnd()) current++;
-        return previousToken();
+    /// Перейти к следующему токену и вернуть тип пройденного
+    public LexerUnit.TokenType nextLexem() throws CompilerException.LexerException {
+        if (!isAtEnd()) tokens.advance();
+        return tokens.type(-1);
     }
 
 
-    /// Проверить, что тип текущего токена совпадает с одним из данных типов и перейти к следующему токену
+    /// Проверить, что тип текущего токена совпадает с данным типом
+    public boolean at(LexerUnit.TokenType type){
+        return check(type);
+    }
+
+    /// Проверить, что тип текущего токена входит в множество set (см. tokenSet)
+    public boolean at(long set){
+        return (set & 1L << tokens.type().ordinal()) != 0;
+    }
+
+    /// Проверить, что тип текущего токена совпадает с одним из данных типов
     public boolean at(LexerUnit.TokenType... types){
-        return Arrays.stream(types).anyMatch(this::check);
+        for (var type : types)
+            if (check(type))
+                return true;
+        return false;
     }
 
-    /// Проверить на соответствие и вернуть токен или выбросить ошибку
-    public LexerUnit.Token requires(LexerUnit.TokenType... types) throws Exception{
+    /// Проверить на соответствие и вернуть тип токена или выбросить ошибку
+    public LexerUnit.TokenType requires(LexerUnit.TokenType type) throws Exception{
+        if(check(type))
+            return nextLexem();
+        expectedError(type);
+        return null;
+    }
+
+    public LexerUnit.TokenType requires(long set) throws Exception{
+        if(at(set))
+            return nextLexem();
+        expectedError(set);
+        return null;
+    }
+
+    public LexerUnit.TokenType requires(LexerUnit.TokenType... types) throws Exception{
         if(at(types))
             return nextLexem();
         expectedError(types);
@@ -41,15 +108,74 @@ public abstract class ParserBase {
     }
 
     public boolean isAtEnd() {
-        return peekToken().type == LexerUnit.TokenType.EOF;
+        return tokens.type() == LexerUnit.TokenType.EOF;
+    }
+    public LexerUnit.Token peekToken() throws CompilerException.LexerException {
+        return tokens.token(0);
     }
-    public LexerUnit.Token peekToken() {
-        return tokens.get(current);
+    public LexerUnit.Token currentToken() throws CompilerException.LexerException { return tokens.token(0); }
+    public LexerUnit.Token previousToken() throws CompilerException.LexerException { return tokens.token(-1); }
+    public Position currentPosition() throws CompilerException.LexerException { return tokens.position(0); }
+    public Position previousPosition() throws CompilerException.LexerException { return tokens.position(-1); }
+    public String previousText() throws CompilerException.LexerException { return tokens.text(-1); }
+    public long previousPayload() throws CompilerException.LexerException { return tokens.payload(-1); }
+    public LexerUnit.TokenType peekNextTokenType() throws CompilerException.LexerException {
+        return tokens.type(1);
     }
-    public LexerUnit.Token currentToken() { return tokens.get(current); }
-    public LexerUnit.Token previousToken() { return tokens.get(current-1); }
     public void expectedError(LexerUnit.TokenType... types) throws Exception{
         String expected = String.join(" или ", Arrays.stream(types).map(Enum::name).toArray(String[]::new));
-        CompilerException.syntaxError(expected + " ожидалось, но " + peekToken().type.name() + " найдено", peekToken().position);
+        CompilerException.syntaxError(expected + " ожидалось, но " + tokens.type().name() + " найдено", currentPosition());
+    }
+
+    /// Запомнить ошибку. Ошибка на том же месте, что и предыдущая, - ее следствие и не запоминается
+    public final void report(CompilerException.BaseCompilerException error) {
+        if (!diagnostics.isEmpty()) {
+            var last = diagnostics.get(diagnostics.size() - 1).position;
+            if (last.line == error.position.line && last.column == error.position.column)
+                return;
+        }
+        diagnostics.add(error);
+    }
+
+    /// Пропустить токены до ';', '}', EOF или if/while/for вне вложенных блоков {}
+    public void synchronize() throws CompilerException.LexerException {
+        int depth = 0;
+        while (!isAtEnd()) {
+            if (at(LexerUnit.TokenType.LEFT_BRACE))
+                depth++;
+            else if (at(LexerUnit.TokenType.RIGHT_BRACE)) {
+                if (depth == 0)
+                    return;
+                depth--;
+            }
+            else if (depth == 0 && at(SYNC))
+                return;
+            skipLexem();
+        }
+    }
+
+    /// То же, что nextLexem, но в режиме восстановления ошибки лексера запоминаются:
+    /// лексер уже прошел ошибочный символ, и следующая попытка продолжит за ним
+    public void skipLexem() throws CompilerException.LexerException {
+        while (true) {
+            try {
+                nextLexem();
+                return;
+            } catch (CompilerException.LexerException e) {
+                if (!recovery)
+                    throw e;
+                report(e);
+            }
+        }
+    }
+
+    public void nestingError() throws Exception{
+        CompilerException.syntaxError("Вложенность глубже " + maxNesting + " уровней", currentPosition());
+    }
+
+    public void expectedError(long set) throws Exception{
+        expectedError(Arrays.stream(LexerUnit.TokenTypes)
+                .filter(type -> (set & 1L << type.ordinal()) != 0)
+                .toArray(LexerUnit.TokenType[]::new));
     }
 }
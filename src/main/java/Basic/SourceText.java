@@ -0,0 +1,112 @@
+package Basic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/// Текст программы из файла, отображенного в память: исходник не копируется в кучу.
+/// Если файл состоит только из ASCII, символ - это просто байт отображения.
+/// Иначе UTF-8 один раз декодируется в CharBuffer, без промежуточных byte[] и String.
+public final class SourceText implements CharSequence {
+    private final ByteBuffer bytes;
+
+    private SourceText(ByteBuffer bytes) {
+        this.bytes = bytes;
+    }
+
+    /// Открыть файл для лексера: new LexerUnit.Lexer(SourceText.map(path))
+    public static CharSequence map(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("Файл слишком большой: " + path);
+            // Отображение остается доступным и после закрытия канала
+            var bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (isAscii(bytes))
+                return new SourceText(bytes);
+            return decode(bytes);
+        }
+    }
+
+    /// Декодировать UTF-8 в буфер точно нужного размера (Charset.decode выделяет по символу на байт)
+    private static CharBuffer decode(ByteBuffer bytes) {
+        int chars = 0;
+        for (int i = 0; i < bytes.limit(); i++) {
+            int b = bytes.get(i) & 0xFF;
+            if ((b & 0xC0) != 0x80)
+                chars += b >= 0xF0 ? 2 : 1;//Четырехбайтовый символ - суррогатная пара
+        }
+        var out = CharBuffer.allocate(chars);
+        var decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        var result = decoder.decode(bytes.duplicate(), out, true);
+        if (result.isOverflow())//Испорченный UTF-8: замены не совпали с подсчетом
+            return StandardCharsets.UTF_8.decode(bytes.duplicate());
+        decoder.flush(out);
+        return out.flip();
+    }
+
+    private static boolean isAscii(ByteBuffer bytes) {
+        int length = bytes.limit();
+        int i = 0;
+        // По 8 байт за раз: у ASCII старший бит каждого байта равен нулю
+        for (; i + Long.BYTES <= length; i += Long.BYTES)
+            if ((bytes.getLong(i) & 0x8080808080808080L) != 0)
+                return false;
+        for (; i < length; i++)
+            if (bytes.get(i) < 0)
+                return false;
+        return true;
+    }
+
+    /// Первое вхождение ch в text начиная с from или -1. У String это векторизованный String.indexOf
+    public static int indexOf(CharSequence text, char ch, int from) {
+        if (text instanceof String string)
+            return string.indexOf(ch, from);
+        for (int i = Math.max(from, 0); i < text.length(); i++)
+            if (text.charAt(i) == ch)
+                return i;
+        return -1;
+    }
+
+    private static final String SPACES = " ".repeat(16);
+    private static final long SPACES_LONG = 0x2020202020202020L;
+
+    /// Конец серии пробелов text[from, to). Отступы проверяются по 16 символов (String.regionMatches
+    /// сравнивает через векторизованный ArraysSupport.mismatch) или по 8 байт отображения за раз
+    public static int skipSpaces(CharSequence text, int from, int to) {
+        if (text instanceof String string)
+            while (from + SPACES.length() <= to && string.regionMatches(from, SPACES, 0, SPACES.length()))
+                from += SPACES.length();
+        else if (text instanceof SourceText source)
+            while (from + Long.BYTES <= to && source.bytes.getLong(from) == SPACES_LONG)
+                from += Long.BYTES;
+        while (from < to && text.charAt(from) == ' ')
+            from++;
+        return from;
+    }
+
+    @Override
+    public int length() { return bytes.limit(); }
+
+    @Override
+    public char charAt(int index) { return (char) bytes.get(index); }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new SourceText(bytes.slice(start, end - start));
+    }
+
+    @Override
+    public String toString() {
+        var chars = new byte[bytes.limit()];
+        bytes.get(0, chars);
+        return new String(chars, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,82 @@
+package Basic;
+
+import java.util.Arrays;
+
+/// Компактное хранилище токенов: вместо объекта Token на каждый токен
+/// держим параллельные массивы типов, смещений и длин.
+/// Текст, значения и Position создаются только по запросу;
+/// строка и столбец вычисляются по смещению через LineIndex лексера.
+public class TokenBuffer {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final LexerUnit.Lexer lexer;
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private long[] payloads = new long[INITIAL_CAPACITY];//Для ID - номер имени, для чисел - значение
+    private int size;
+
+    public TokenBuffer(LexerUnit.Lexer lexer) {
+        this.lexer = lexer;
+    }
+
+    public void add(LexerUnit.TokenType type, int start, int length, long payload) {
+        if (size == types.length)
+            grow();
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        payloads[size] = payload;
+        size++;
+    }
+
+    /// Дописать токены другого буфера; nameIds переводит номера имен его лексера в номера нашего
+    public void append(TokenBuffer other, int[] nameIds) {
+        int capacity = types.length;
+        while (capacity < size + other.size)
+            capacity *= 2;
+        if (capacity != types.length)
+            resize(capacity);
+        System.arraycopy(other.types, 0, types, size, other.size);
+        System.arraycopy(other.starts, 0, starts, size, other.size);
+        System.arraycopy(other.lengths, 0, lengths, size, other.size);
+        System.arraycopy(other.payloads, 0, payloads, size, other.size);
+        byte id = (byte) LexerUnit.TokenType.ID.ordinal();
+        for (int i = size; i < size + other.size; i++)
+            if (types[i] == id)
+                payloads[i] = nameIds[(int) payloads[i]];
+        size += other.size;
+    }
+
+    private void grow() {
+        resize(types.length * 2);
+    }
+
+    private void resize(int capacity) {
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        payloads = Arrays.copyOf(payloads, capacity);
+    }
+
+    public int size() { return size; }
+
+    public LexerUnit.TokenType type(int index) { return LexerUnit.TokenTypes[types[index]]; }
+    public int start(int index) { return starts[index]; }
+    public int length(int index) { return lengths[index]; }
+    public long payload(int index) { return payloads[index]; }
+
+    public String text(int index) {
+        return lexer.tokenText(type(index), starts[index], lengths[index], payloads[index]);
+    }
+
+    public Position position(int index) {
+        return lexer.positionOf(starts[index]);
+    }
+
+    /// Собрать полноценный Token, например для отладки или сообщений
+    public LexerUnit.Token get(int index) {
+        var type = type(index);
+        return new LexerUnit.Token(type, lexer.tokenValue(type, starts[index], lengths[index], payloads[index]), position(index));
+    }
+}
@@ -0,0 +1,119 @@
+package Basic;
+
+import ExceptionLogic.CompilerException;
+
+/// Поток токенов, которые лексер выдает по требованию парсера.
+/// В кольцевом буфере живут только предыдущий, текущий и следующий токены,
+/// так что память на токены не зависит от размера программы.
+/// Токены хранятся как в TokenBuffer: типы, смещения и длины в массивах.
+/// Источник токенов - лексер или уже заполненный TokenBuffer (параллельный разбор).
+public class TokenStream {
+    private static final int CAPACITY = 4; // степень двойки
+    private static final int MASK = CAPACITY - 1;
+
+    private final LexerUnit.Lexer lexer;
+    private final TokenBuffer buffer;//null - токены берутся у лексера
+    private final int from;//Номер в buffer первого токена потока
+    private final LexerUnit.TokenType[] types = new LexerUnit.TokenType[CAPACITY];
+    private final int[] starts = new int[CAPACITY];
+    private final int[] lengths = new int[CAPACITY];
+    private final long[] payloads = new long[CAPACITY];
+    private int position;//Номер текущего токена
+    private int count;//Сколько токенов получено от лексера
+
+    public TokenStream(LexerUnit.Lexer lexer) throws CompilerException.LexerException {
+        this.lexer = lexer;
+        this.buffer = null;
+        this.from = 0;
+        fill();
+    }
+
+    /// Поток токенов buffer начиная с номера from. Последний токен буфера должен быть EOF
+    public TokenStream(LexerUnit.Lexer lexer, TokenBuffer buffer, int from) throws CompilerException.LexerException {
+        this.lexer = lexer;
+        this.buffer = buffer;
+        this.from = from;
+        fill();
+    }
+
+    private void fill() throws CompilerException.LexerException {
+        int slot = count & MASK;
+        int last = (count - 1) & MASK;
+        if (buffer != null) {
+            int i = Math.min(from + count, buffer.size() - 1);
+            types[slot] = buffer.type(i);
+            starts[slot] = buffer.start(i);
+            lengths[slot] = buffer.length(i);
+            payloads[slot] = buffer.payload(i);
+        } else if (count > 0 && types[last] == LexerUnit.TokenType.EOF) {
+            types[slot] = types[last];
+            starts[slot] = starts[last];
+            lengths[slot] = lengths[last];
+            payloads[slot] = payloads[last];
+        } else {
+            types[slot] = lexer.scan();
+            starts[slot] = lexer.tokenStart();
+            lengths[slot] = lexer.tokenLength();
+            payloads[slot] = lexer.tokenPayload();
+        }
+        count++;
+    }
+
+    public int position() { return position; }
+
+    /// Номер текущего токена в buffer (при чтении из TokenBuffer)
+    public int index() { return from + position; }
+
+    /// Индекс в кольце для токена со смещением offset от текущего (-1 - предыдущий, 1 - следующий)
+    private int slot(int offset) throws CompilerException.LexerException {
+        if (offset < -1 || offset > 1 || position + offset < 0)
+            throw new IndexOutOfBoundsException("Токен со смещением " + offset + " недоступен");
+        if (offset == 1 && count <= position + 1)
+            fill();
+        return (position + offset) & MASK;
+    }
+
+    public LexerUnit.TokenType type() { return types[position & MASK]; }
+
+    public LexerUnit.TokenType type(int offset) throws CompilerException.LexerException {
+        return types[slot(offset)];
+    }
+
+    public String text(int offset) throws CompilerException.LexerException {
+        int i = slot(offset);
+        return lexer.tokenText(types[i], starts[i], lengths[i], payloads[i]);
+    }
+
+    public long payload(int offset) throws CompilerException.LexerException {
+        return payloads[slot(offset)];
+    }
+
+    /// Смещение в коде начала токена
+    public int start(int offset) throws CompilerException.LexerException {
+        return starts[slot(offset)];
+    }
+
+    /// Смещение в коде сразу за концом токена
+    public int end(int offset) throws CompilerException.LexerException {
+        int i = slot(offset);
+        return starts[i] + lengths[i];
+    }
+
+    public Position position(int offset) throws CompilerException.LexerException {
+        int i = slot(offset);
+        return lexer.positionOf(starts[i]);
+    }
+
+    public LexerUnit.Token token(int offset) throws CompilerException.LexerException {
+        int i = slot(offset);
+        return new LexerUnit.Token(types[i], lexer.tokenValue(types[i], starts[i], lengths[i], payloads[i]), lexer.positionOf(starts[i]));
+    }
+
+    /// Перейти к следующему токену
+    public void advance() throws CompilerException.LexerException {
+        // Сначала токен, потом сдвиг: после ошибки лексера поток остается на прежнем токене
+        if (count <= position + 1)
+            fill();
+        position++;
+    }
+}
@@ -1,12 +1,15 @@
 package ExceptionLogic;
 
+import Basic.LineIndex;
 import Basic.Position;
 
 public class CompilerException{
+    /// Без стека вызовов: место ошибки задает position, а в режиме восстановления
+    /// парсер создает по исключению на каждую ошибку, и заполнение стека было бы основной ценой
     public static class BaseCompilerException extends Exception {
         public Position position;
         public BaseCompilerException(String message,Position position){
-            super(message);
+            super(message, null, false, false);
             this.position = position;
         }
     }
@@ -41,8 +44,8 @@ public class CompilerException{
         throw new SemanticException(message, position);
     }
 
-    public static void outputError(String message, BaseCompilerException exception, String[] lines) throws Exception{
-        var line = lines[exception.position.line - 1];
+    public static void outputError(String message, BaseCompilerException exception, LineIndex lines) throws Exception{
+        var line = lines.line(exception.position.line);
         System.out.println(message + " " + exception.position + ": " + exception.getMessage());
     }
 }
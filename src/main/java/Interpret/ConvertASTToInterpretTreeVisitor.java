@@ -1,13 +1,52 @@
 package Interpret;
 
 import Basic.ASTNodes;
+import Basic.CommonSubexpressions;
 import SemanticCheckLogic.CalcTypes;
+import SemanticCheckLogic.CompilationContext;
 import SemanticCheckLogic.SymbolTable;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Set;
 
 public class ConvertASTToInterpretTreeVisitor implements ASTNodes.IVisitor<InterpretTree.NodeI> {
+    private final CompilationContext context;//Контекст, с которым дерево прошло SemanticCheck
+
+    // Общие подвыражения (дерево после Basic.CommonSubexpressions): узлы, на которые
+    // в текущем выражении больше одной ссылки, и их узлы с запомненным значением
+    private final boolean sharedExpressions;
+    private Set<ASTNodes.ExprNode> shared = Set.of();
+    private final IdentityHashMap<ASTNodes.ExprNode, InterpretTree.SharedNodeI> sharedNodes = new IdentityHashMap<>();
+
+    public ConvertASTToInterpretTreeVisitor(CompilationContext context) {
+        this(context, false);
+    }
+
+    /// sharedExpressions - дерево прошло CommonSubexpressions, и общие узлы выражения
+    /// нужно вычислять один раз за его вычисление
+    public ConvertASTToInterpretTreeVisitor(CompilationContext context, boolean sharedExpressions) {
+        this.context = context;
+        this.sharedExpressions = sharedExpressions;
+    }
+
+    /// Выражение оператора целиком. Общие подвыражения в нем вычисляются один раз,
+    /// и их значения сбрасываются перед каждым вычислением expr
+    private InterpretTree.ExprNodeI root(ASTNodes.ExprNode expr) throws Exception {
+        if (!sharedExpressions)
+            return (InterpretTree.ExprNodeI) expr.visit(this);
+        shared = CommonSubexpressions.sharedIn(expr);
+        try {
+            var result = (InterpretTree.ExprNodeI) expr.visit(this);
+            if (sharedNodes.isEmpty() || result == null)
+                return result;
+            return new InterpretTree.SharedScopeNodeI(result, sharedNodes.values().toArray(new InterpretTree.SharedNodeI[0]));
+        } finally {
+            shared = Set.of();
+            sharedNodes.clear();
+        }
+    }
 
     @Override
     public InterpretTree.NodeI visitNode(ASTNodes.Node n) throws Exception {
@@ -60,7 +99,7 @@ public class ConvertASTToInterpretTreeVisitor implements ASTNodes.IVisitor<Inter
     @Override
     public InterpretTree.NodeI visitWhile(ASTNodes.WhileNode whn) throws Exception {
         return new InterpretTree.WhileNodeI(
-                (InterpretTree.ExprNodeI) whn.cond.visit(this),
+                root(whn.cond),
                 (InterpretTree.StatementNodeI) whn.stat.visit(this)
         );
     }
@@ -69,7 +108,7 @@ public class ConvertASTToInterpretTreeVisitor implements ASTNodes.IVisitor<Inter
     public InterpretTree.NodeI visitFor(ASTNodes.ForNode forn) throws Exception{
         return new InterpretTree.ForNodeI(
                 (InterpretTree.StatementNodeI) forn.start.visit(this),
-                (InterpretTree.ExprNodeI) forn.condition.visit(this),
+                root(forn.condition),
                 (InterpretTree.StatementNodeI) forn.increment.visit(this),
                 (InterpretTree.StatementNodeI) forn.body.visit(this)
         );
@@ -83,7 +122,7 @@ public class ConvertASTToInterpretTreeVisitor implements ASTNodes.IVisitor<Inter
             elseStat = (InterpretTree.StatementNodeI) ifn.elseif.visit(this);
         }
         return new InterpretTree.IfNodeI(
-                (InterpretTree.ExprNodeI) ifn.cond.visit(this),
+                root(ifn.cond),
                 thenStat,
                 elseStat
         );
@@ -91,7 +130,7 @@ public class ConvertASTToInterpretTreeVisitor implements ASTNodes.IVisitor<Inter
 
     @Override
     public InterpretTree.NodeI visitId(ASTNodes.IdNode id) throws Exception {
-        SymbolTable.SymbolInfo sym = SymbolTable.SymTable.get(id.name);
+        SymbolTable.SymbolInfo sym = id.symbol;
         if (sym == null) return null;
 
         switch (sym.semanticType) {
@@ -110,12 +149,23 @@ public class ConvertASTToInterpretTreeVisitor implements ASTNodes.IVisitor<Inter
 
     @Override
     public InterpretTree.NodeI visitArrayAccess(ASTNodes.ArrayAccessNode node) throws Exception{
+        if (!shared.contains(node))
+            return arrayAccess(node);
+        var result = sharedNodes.get(node);
+        if (result == null) {
+            result = new InterpretTree.SharedNodeI(arrayAccess(node));
+            sharedNodes.put(node, result);
+        }
+        return result;
+    }
+
+    private InterpretTree.ExprNodeI arrayAccess(ASTNodes.ArrayAccessNode node) throws Exception{
         InterpretTree.ExprNodeI array = (InterpretTree.ExprNodeI) node.array.visit(this);
         InterpretTree.ExprNodeI index = (InterpretTree.ExprNodeI) node.index.visit(this);
 
         int elementType = 0; // по умолчанию int
         if (node.array instanceof ASTNodes.IdNode) {
-            SymbolTable.SymbolInfo sym = SymbolTable.SymTable.get(((ASTNodes.IdNode) node.array).name);
+            SymbolTable.SymbolInfo sym = ((ASTNodes.IdNode) node.array).symbol;
             if (sym != null) {
                 switch (sym.semanticType) {
                     case DoubleType: elementType = 1; break;
@@ -148,7 +198,7 @@ public class ConvertASTToInterpretTreeVisitor implements ASTNodes.IVisitor<Inter
     }
     @Override
     public InterpretTree.NodeI visitArrayDeclaration(ASTNodes.ArrayDeclarationNode node) throws Exception{
-        SymbolTable.SymbolInfo sym = SymbolTable.SymTable.get(node.id.name);
+        SymbolTable.SymbolInfo sym = context.get(node.id);//Объявления массивов SemanticCheck не разрешает
         if (sym == null) return null;
 
         InterpretTree.ExprNodeI size = null;
@@ -176,14 +226,14 @@ public class ConvertASTToInterpretTreeVisitor implements ASTNodes.IVisitor<Inter
 
     @Override
     public InterpretTree.NodeI visitArrayAssign(ASTNodes.ArrayAssignNode node) throws Exception {
-        InterpretTree.ExprNodeI array = (InterpretTree.ExprNodeI) node.array.visit(this);
-        InterpretTree.ExprNodeI index = (InterpretTree.ExprNodeI) node.index.visit(this);
-        InterpretTree.ExprNodeI value = (InterpretTree.ExprNodeI) node.expr.visit(this);
+        InterpretTree.ExprNodeI array = root(node.array);
+        InterpretTree.ExprNodeI index = root(node.index);
+        InterpretTree.ExprNodeI value = root(node.expr);
 
         // Определяем тип элементов массива
         int elementType = 0; // по умолчанию int
         if (node.array instanceof ASTNodes.IdNode) {
-            SymbolTable.SymbolInfo sym = SymbolTable.SymTable.get(((ASTNodes.IdNode) node.array).name);
+            SymbolTable.SymbolInfo sym = ((ASTNodes.IdNode) node.array).symbol;
             if (sym != null) {
                 switch (sym.semanticType) {
                     case DoubleType: elementType = 1; break;
@@ -207,15 +257,15 @@ public class ConvertASTToInterpretTreeVisitor implements ASTNodes.IVisitor<Inter
     public InterpretTree.NodeI visitArrayAssignOperation(ASTNodes.ArrayAssignOperationNode node) throws Exception {
         // Пока используем простую реализацию - преобразуем в обычное присваивание
         // TODO: Реализовать оптимизированную версию для составных операций
-        InterpretTree.ExprNodeI array = (InterpretTree.ExprNodeI) node.array.visit(this);
-        InterpretTree.ExprNodeI index = (InterpretTree.ExprNodeI) node.index.visit(this);
-        InterpretTree.ExprNodeI value = (InterpretTree.ExprNodeI) node.expr.visit(this);
+        InterpretTree.ExprNodeI array = root(node.array);
+        InterpretTree.ExprNodeI index = root(node.index);
+        InterpretTree.ExprNodeI value = root(node.expr);
 
         // Временное решение - создаем обычное присваивание
         // В будущем нужно создать специализированные узлы для составных операций
         int elementType = 0;
         if (node.array instanceof ASTNodes.IdNode) {
-            SymbolTable.SymbolInfo sym = SymbolTable.SymTable.get(((ASTNodes.IdNode) node.array).name);
+            SymbolTable.SymbolInfo sym = ((ASTNodes.IdNode) node.array).symbol;
             if (sym != null) {
                 switch (sym.semanticType) {
                     case DoubleType: elementType = 1; break;
@@ -231,29 +281,29 @@ public class ConvertASTToInterpretTreeVisitor implements ASTNodes.IVisitor<Inter
 
     @Override
     public InterpretTree.NodeI visitAssign(ASTNodes.AssignNode ass) throws Exception {
-        SymbolTable.SymbolInfo sym = SymbolTable.SymTable.get(ass.id.name);
+        SymbolTable.SymbolInfo sym = ass.id.symbol;
         if (sym == null) return null;
 
         switch (sym.semanticType) {
             case IntType:
                 return new InterpretTree.AssignIntNodeI(
                         sym.address,
-                        (InterpretTree.ExprNodeI) ass.expr.visit(this)
+                        root(ass.expr)
                 );
             case DoubleType:
                 return new InterpretTree.AssignRealNodeI(
                         sym.address,
-                        (InterpretTree.ExprNodeI) ass.expr.visit(this)
+                        root(ass.expr)
                 );
             case BoolType:
                 return new InterpretTree.AssignBoolNodeI(
                         sym.address,
-                        (InterpretTree.ExprNodeI) ass.expr.visit(this)
+                        root(ass.expr)
                 );
             case BigIntegerType:
                 return new InterpretTree.AssignBigIntegerNodeI(
                         sym.address,
-                        (InterpretTree.ExprNodeI) ass.expr.visit(this)
+                        root(ass.expr)
                 );
             default:
                 return null;
@@ -261,7 +311,7 @@ public class ConvertASTToInterpretTreeVisitor implements ASTNodes.IVisitor<Inter
     }
     @Override
     public InterpretTree.NodeI visitAssignOperation(ASTNodes.AssignOperationNode ass) throws Exception {
-        SymbolTable.SymbolInfo sym = SymbolTable.SymTable.get(ass.id.name);
+        SymbolTable.SymbolInfo sym = ass.id.symbol;
         if (sym == null) return null;
 
         switch (ass.op) {
@@ -274,7 +324,7 @@ public class ConvertASTToInterpretTreeVisitor implements ASTNodes.IVisitor<Inter
                         } else {
                             return new InterpretTree.AssignPlusIntNodeI(
                                     sym.address,
-                                    (InterpretTree.ExprNodeI) ass.expr.visit(this)
+                                    root(ass.expr)
                             );
                         }
                     case DoubleType:
@@ -287,7 +337,7 @@ public class ConvertASTToInterpretTreeVisitor implements ASTNodes.IVisitor<Inter
                         } else {
                             return new InterpretTree.AssignPlusRealNodeI(
                                     sym.address,
-                                    (InterpretTree.ExprNodeI) ass.expr.visit(this)
+                                    root(ass.expr)
                             );
                         }
                     case BigIntegerType:
@@ -300,7 +350,7 @@ public class ConvertASTToInterpretTreeVisitor implements ASTNodes.IVisitor<Inter
                         } else {
                             return new InterpretTree.AssignPlusBigIntegerNodeI(
                                     sym.address,
-                                    (InterpretTree.ExprNodeI) ass.expr.visit(this)
+                                    root(ass.expr)
                             );
                         }
                 }
@@ -315,7 +365,7 @@ public class ConvertASTToInterpretTreeVisitor implements ASTNodes.IVisitor<Inter
                         } else {
                             return new InterpretTree.AssignMinusIntNodeI(
                                     sym.address,
-                                    (InterpretTree.ExprNodeI) ass.expr.visit(this)
+                                    root(ass.expr)
                             );
                         }
                     case DoubleType:
@@ -328,7 +378,7 @@ public class ConvertASTToInterpretTreeVisitor implements ASTNodes.IVisitor<Inter
                         } else {
                             return new InterpretTree.AssignMinusRealNodeI(
                                     sym.address,
-                                    (InterpretTree.ExprNodeI) ass.expr.visit(this)
+                                    root(ass.expr)
                             );
                         }
                     case BigIntegerType:
@@ -341,7 +391,7 @@ public class ConvertASTToInterpretTreeVisitor implements ASTNodes.IVisitor<Inter
                         } else {
                             return new InterpretTree.AssignMinusBigIntegerNodeI(
                                     sym.address,
-                                    (InterpretTree.ExprNodeI) ass.expr.visit(this)
+                                    root(ass.expr)
                             );
                         }
                 }
@@ -356,7 +406,7 @@ public class ConvertASTToInterpretTreeVisitor implements ASTNodes.IVisitor<Inter
                         } else {
                             return new InterpretTree.AssignMultIntNodeI(
                                     sym.address,
-                                    (InterpretTree.ExprNodeI) ass.expr.visit(this)
+                                    root(ass.expr)
                             );
                         }
                     case DoubleType:
@@ -369,7 +419,7 @@ public class ConvertASTToInterpretTreeVisitor implements ASTNodes.IVisitor<Inter
                         } else {
                             return new InterpretTree.AssignMultRealNodeI(
                                     sym.address,
-                                    (InterpretTree.ExprNodeI) ass.expr.visit(this)
+                                    root(ass.expr)
                             );
                         }
                     case BigIntegerType:
@@ -382,7 +432,7 @@ public class ConvertASTToInterpretTreeVisitor implements ASTNodes.IVisitor<Inter
                         } else {
                             return new InterpretTree.AssignMultBigIntegerNodeI(
                                     sym.address,
-                                    (InterpretTree.ExprNodeI) ass.expr.visit(this)
+                                    root(ass.expr)
                             );
                         }
                 }
@@ -400,7 +450,7 @@ public class ConvertASTToInterpretTreeVisitor implements ASTNodes.IVisitor<Inter
                         } else {
                             return new InterpretTree.AssignDivRealNodeI(
                                     sym.address,
-                                    (InterpretTree.ExprNodeI) ass.expr.visit(this)
+                                    root(ass.expr)
                             );
                         }
                     case BigIntegerType:
@@ -413,7 +463,7 @@ public class ConvertASTToInterpretTreeVisitor implements ASTNodes.IVisitor<Inter
                         } else {
                             return new InterpretTree.AssignDivBigIntegerNodeI(
                                     sym.address,
-                                    (InterpretTree.ExprNodeI) ass.expr.visit(this)
+                                    root(ass.expr)
                             );
                         }
                 }
@@ -424,13 +474,30 @@ public class ConvertASTToInterpretTreeVisitor implements ASTNodes.IVisitor<Inter
 
     @Override
     public InterpretTree.NodeI visitFuncCall(ASTNodes.FuncCallNode f) throws Exception {
+        // Вызов, разрешенный при проверке в стандартную sqrt, а не любое имя "sqrt"
+        if (f.name.symbol == CompilationContext.standard("sqrt") && f.pars.lst.size() == 1) {
+            var arg = f.pars.lst.get(0);
+            var value = (InterpretTree.ExprNodeI) arg.visit(this);
+            return arg.type == SymbolTable.SemanticType.IntType ? new InterpretTree.SqrtI(value) : new InterpretTree.SqrtR(value);
+        }
         return null;
     }
 
     @Override
     public InterpretTree.NodeI visitBinOp(ASTNodes.BinOpNode bin) throws Exception {
-        SymbolTable.SemanticType lt = CalcTypes.calcType(bin.left);
-        SymbolTable.SemanticType rt = CalcTypes.calcType(bin.right);
+        if (!shared.contains(bin))
+            return binOp(bin);
+        var result = sharedNodes.get(bin);
+        if (result == null) {
+            result = new InterpretTree.SharedNodeI(binOp(bin));
+            sharedNodes.put(bin, result);
+        }
+        return result;
+    }
+
+    private InterpretTree.ExprNodeI binOp(ASTNodes.BinOpNode bin) throws Exception {
+        SymbolTable.SemanticType lt = CalcTypes.calcType(bin.left, context);
+        SymbolTable.SemanticType rt = CalcTypes.calcType(bin.right, context);
         InterpretTree.ExprNodeI linterpr = (InterpretTree.ExprNodeI) bin.left.visit(this);
         InterpretTree.ExprNodeI rinterpr = (InterpretTree.ExprNodeI) bin.right.visit(this);
 
@@ -650,9 +717,10 @@ public class ConvertASTToInterpretTreeVisitor implements ASTNodes.IVisitor<Inter
 
     @Override
     public InterpretTree.NodeI visitProcCall(ASTNodes.ProcCallNode p) throws Exception {
-        return new InterpretTree.ProcCallNodeI(
-                p.name.name,
-                (InterpretTree.ExprListNodeI) p.pars.visit(this)
-        );
+        InterpretTree.ExprListNodeI pars = new InterpretTree.ExprListNodeI();
+        for (ASTNodes.ExprNode x : p.pars.lst) {
+            pars.add(root(x));
+        }
+        return new InterpretTree.ProcCallNodeI(p.name.name, pars);
     }
 }
\ No newline at end of file
@@ -437,6 +437,19 @@ public class InterpretTree {
         }
     }
 
+    // sqrt(x): аргумент int или double, результат double
+    public static class SqrtI extends ExprNodeI {
+        public ExprNodeI expr;
+        public SqrtI(ExprNodeI expr) { this.expr = expr; }
+        @Override public double evalReal() { return Math.sqrt(expr.evalInt()); }
+    }
+
+    public static class SqrtR extends ExprNodeI {
+        public ExprNodeI expr;
+        public SqrtR(ExprNodeI expr) { this.expr = expr; }
+        @Override public double evalReal() { return Math.sqrt(expr.evalReal()); }
+    }
+
     public static class BigIntegerPowNodeI extends BinOpNodeI {
         public BigIntegerPowNodeI(ExprNodeI left, ExprNodeI right) { super(left, right); }
         @Override public BigInteger evalBigInteger() {
@@ -451,6 +464,71 @@ public class InterpretTree {
         }
     }
 
+    /// Общее подвыражение (Basic.CommonSubexpressions): значение вычисляется при первом
+    /// обращении и запоминается до сброса в SharedScopeNodeI
+    public static class SharedNodeI extends ExprNodeI {
+        public ExprNodeI expr;
+        public int ready;//Какие значения уже вычислены: 1 - int, 2 - real, 4 - bool, 8 - BigInteger
+        private int intValue;
+        private double realValue;
+        private boolean boolValue;
+        private BigInteger bigIntegerValue;
+
+        public SharedNodeI(ExprNodeI expr) { this.expr = expr; }
+
+        @Override public int evalInt() {
+            if ((ready & 1) == 0) {
+                intValue = expr.evalInt();
+                ready |= 1;
+            }
+            return intValue;
+        }
+
+        @Override public double evalReal() {
+            if ((ready & 2) == 0) {
+                realValue = expr.evalReal();
+                ready |= 2;
+            }
+            return realValue;
+        }
+
+        @Override public boolean evalBool() {
+            if ((ready & 4) == 0) {
+                boolValue = expr.evalBool();
+                ready |= 4;
+            }
+            return boolValue;
+        }
+
+        @Override public BigInteger evalBigInteger() {
+            if ((ready & 8) == 0) {
+                bigIntegerValue = expr.evalBigInteger();
+                ready |= 8;
+            }
+            return bigIntegerValue;
+        }
+    }
+
+    /// Выражение оператора с общими подвыражениями: перед каждым вычислением их значения сбрасываются
+    public static class SharedScopeNodeI extends ExprNodeI {
+        public ExprNodeI expr;
+        public SharedNodeI[] shared;
+
+        public SharedScopeNodeI(ExprNodeI expr, SharedNodeI[] shared) {
+            this.expr = expr;
+            this.shared = shared;
+        }
+
+        private void reset() {
+            for (SharedNodeI node : shared) node.ready = 0;
+        }
+
+        @Override public int evalInt() { reset(); return expr.evalInt(); }
+        @Override public double evalReal() { reset(); return expr.evalReal(); }
+        @Override public boolean evalBool() { reset(); return expr.evalBool(); }
+        @Override public BigInteger evalBigInteger() { reset(); return expr.evalBigInteger(); }
+    }
+
     public static class StatementListNodeI extends StatementNodeI {
         public List<StatementNodeI> lst = new ArrayList<>();
 
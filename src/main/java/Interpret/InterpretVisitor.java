@@ -181,7 +181,7 @@ public class InterpretVisitor implements ASTNodes.IVisitor<Object>{
 
     @Override
     public Object visitId(ASTNodes.IdNode node) throws Exception {
-        SymbolTable.SymbolInfo symInfo = SymbolTable.SymTable.get(node.name);
+        SymbolTable.SymbolInfo symInfo = node.symbol;
         if (symInfo == null) {
             CompilerException.semanticError("Идентификатор " + node.name + " не определен", node.position);
             return null;
@@ -230,7 +230,7 @@ public class InterpretVisitor implements ASTNodes.IVisitor<Object>{
     @Override
     public Object visitAssign(ASTNodes.AssignNode node) throws Exception {
         Object value = node.expr.visit(this);
-        SymbolTable.SymbolInfo symInfo = SymbolTable.SymTable.get(node.id.name);
+        SymbolTable.SymbolInfo symInfo = node.id.symbol;
 
         if (symInfo == null) {
             CompilerException.semanticError("Переменная " + node.id.name + " не определена", node.id.position);
@@ -262,7 +262,7 @@ public class InterpretVisitor implements ASTNodes.IVisitor<Object>{
     @Override
     public Object visitAssignOperation(ASTNodes.AssignOperationNode node) throws Exception {
         Object value = node.expr.visit(this);
-        SymbolTable.SymbolInfo symInfo = SymbolTable.SymTable.get(node.id.name);
+        SymbolTable.SymbolInfo symInfo = node.id.symbol;
 
         if (symInfo == null) {
             CompilerException.semanticError("Переменная " + node.id.name + " не определена", node.id.position);
@@ -4,7 +4,7 @@ import Basic.ASTNodes;
 import Basic.LexerUnit;
 import ExceptionLogic.CompilerException;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 
 public class CalcTypes {
     public static boolean assignComparable(SymbolTable.SemanticType left, SymbolTable.SemanticType right) {
@@ -20,279 +20,189 @@ public class CalcTypes {
         return false;
     }
 
-    public static class CalcTypeVisitor implements ASTNodes.IVisitor<SymbolTable.SemanticType>{
-        private SymbolTable.SemanticType calcTypeVisitor(ASTNodes.ExprNode expr) throws Exception{
-            return expr.visit(new CalcTypeVisitor());
-        }
-
-        @Override public SymbolTable.SemanticType visitNode(ASTNodes.Node node) throws Exception { return SymbolTable.SemanticType.NoType; }
-        @Override public SymbolTable.SemanticType visitExprNode(ASTNodes.ExprNode node) throws Exception {  return SymbolTable.SemanticType.NoType; }
-        @Override public SymbolTable.SemanticType visitStatementNode(ASTNodes.StatementNode node) throws Exception {   return SymbolTable.SemanticType.NoType; }
-
-        @Override public SymbolTable.SemanticType visitBinOp(ASTNodes.BinOpNode node) throws Exception{
-            var left = node.left.visit(this);
-            var right = node.right.visit(this);
-
-            if(Arrays.stream(LexerUnit.ArithmeticOperations).anyMatch(op -> op == node.op)){
-                if(!Arrays.stream(SymbolTable.NumTypes).anyMatch(l -> l == left) ||
-                        !Arrays.stream(SymbolTable.NumTypes).anyMatch(l -> l == right))
-                    CompilerException.semanticError("Операция " + node.operationToString() + " не определена для типов " + left + " и " + right, node.left.position);
-                else if(node.op == LexerUnit.TokenType.DIVIDE)
-                    return SymbolTable.SemanticType.DoubleType;
-                else if(left == right)
-                    return left;
-                return SymbolTable.SemanticType.DoubleType;
-            }
-
-            else if(Arrays.stream(LexerUnit.LogicalOperators).anyMatch(op -> op == node.op)){
-                if(left != SymbolTable.SemanticType.BoolType || right != SymbolTable.SemanticType.BoolType)
-                    CompilerException.semanticError("Операция " + node.operationToString() + " не определена для типов " + left + " и " + right, node.left.position);
-                return SymbolTable.SemanticType.BoolType;
-            }
+    private static boolean contains(Object[] values, Object value) {
+        for (var v : values)
+            if (v == value)
+                return true;
+        return false;
+    }
 
-            else if(Arrays.stream(LexerUnit.CompareOperations).anyMatch(op -> op == node.op)){
-                if(!Arrays.stream(SymbolTable.NumTypes).anyMatch(l -> l == left) ||
-                        !Arrays.stream(SymbolTable.NumTypes).anyMatch(l -> l == right))
-                    CompilerException.semanticError("Операция " + node.operationToString() + " не определена для типов " + left + " и " + right, node.left.position);
-                return SymbolTable.SemanticType.BoolType;
-            }
-            return null;
-        }
+    private static boolean isNumType(SymbolTable.SemanticType type) {
+        return contains(SymbolTable.NumTypes, type);
+    }
 
-        @Override public SymbolTable.SemanticType visitStatementList(ASTNodes.StatementListNode node) throws Exception {
-            return SymbolTable.SemanticType.NoType;
-        }
-        @Override public SymbolTable.SemanticType visitExprList(ASTNodes.ExprListNode node) throws Exception {
-            return SymbolTable.SemanticType.NoType;
+    /// Тип выражения с проверкой операций и имен; при ошибке - SemanticException.
+    /// Ветвление switch по expr.kind. Цепочка операций по левому операнду (a + b + c ...
+    /// разбирается как ((a + b) + c) ...) проходится циклом по явному стеку, а не рекурсией
+    public static SymbolTable.SemanticType calcTypeVis(ASTNodes.ExprNode expr, CompilationContext context) throws Exception {
+        if (expr.kind != ASTNodes.BIN_OP)
+            return checkedType(expr, context);
+        var chain = new ArrayList<ASTNodes.BinOpNode>();
+        var node = expr;
+        while (node.kind == ASTNodes.BIN_OP) {
+            var bin = (ASTNodes.BinOpNode) node;
+            chain.add(bin);
+            node = bin.left;
         }
-        @Override public SymbolTable.SemanticType visitInt(ASTNodes.IntNode node) throws Exception {
-            return SymbolTable.SemanticType.IntType;
-        }
-        @Override public SymbolTable.SemanticType visitDouble(ASTNodes.DoubleNode node) {
-            return SymbolTable.SemanticType.DoubleType;
+        var type = checkedType(node, context);
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            var bin = chain.get(i);
+            type = binOpType(bin, type, calcTypeVis(bin.right, context));
         }
-        @Override public SymbolTable.SemanticType visitBigInt(ASTNodes.BigIntNode node) throws Exception {
-            return SymbolTable.SemanticType.BigIntegerType;
-        }
-        @Override public SymbolTable.SemanticType visitId(ASTNodes.IdNode node) throws Exception{
-            if(SymbolTable.SymTable.get(node.name) == null)
-                CompilerException.semanticError("Идентификатор " + node.name + " не определен", node.position);
-            return SymbolTable.SymTable.get(node.name).semanticType;
-        }
-        @Override public SymbolTable.SemanticType visitArrayAccess(ASTNodes.ArrayAccessNode node) throws Exception {
-            var arrayType = node.array.visit(this);
-            var indexType = node.index.visit(this);
+        return type;
+    }
 
-            var arrayInfo = SymbolTable.SymTable.get(((ASTNodes.IdNode)node.array).name);
-            if(arrayInfo == null || arrayInfo.kindType != SymbolTable.KindType.ArrayName){
-                CompilerException.semanticError("Ожидался массив, получено " + arrayType, node.position);
-                return SymbolTable.SemanticType.BadType;
+    private static SymbolTable.SemanticType checkedType(ASTNodes.ExprNode expr, CompilationContext context) throws Exception {
+        switch (expr.kind) {
+            case ASTNodes.BIN_OP:
+                return calcTypeVis(expr, context);
+            case ASTNodes.INT:
+                return SymbolTable.SemanticType.IntType;
+            case ASTNodes.DOUBLE:
+                return SymbolTable.SemanticType.DoubleType;
+            case ASTNodes.BIG_INT:
+                return SymbolTable.SemanticType.BigIntegerType;
+            case ASTNodes.ID: {
+                var id = (ASTNodes.IdNode) expr;
+                var info = symbolOf(id, context);
+                if (info == null)
+                    CompilerException.semanticError("Идентификатор " + id.name + " не определен", id.position);
+                return info.semanticType;
             }
-
-            if(indexType != SymbolTable.SemanticType.IntType){
-                CompilerException.semanticError("Индекс в массиве должен быть целочисленным, получен " + indexType, node.position);
-                return SymbolTable.SemanticType.BadType;
+            case ASTNodes.ARRAY_ACCESS: {
+                var node = (ASTNodes.ArrayAccessNode) expr;
+                var arrayType = calcTypeVis(node.array, context);
+                var indexType = calcTypeVis(node.index, context);
+
+                var arrayInfo = symbolOf((ASTNodes.IdNode) node.array, context);
+                if(arrayInfo == null || arrayInfo.kindType != SymbolTable.KindType.ArrayName)
+                    CompilerException.semanticError("Ожидался массив, получено " + arrayType, node.position);
+                if(indexType != SymbolTable.SemanticType.IntType)
+                    CompilerException.semanticError("Индекс в массиве должен быть целочисленным, получен " + indexType, node.position);
+
+                return arrayInfo.elementType != null ?
+                        arrayInfo.elementType :
+                        SymbolTable.SemanticType.ObjectType;
             }
-
-            return arrayInfo.elementType != null ?
-                    arrayInfo.elementType :
-                    SymbolTable.SemanticType.ObjectType;
-        }
-        @Override public SymbolTable.SemanticType visitArrayLiteral(ASTNodes.ArrayLiteralNode node) throws Exception {
-            if(node.elements.isEmpty())
-                return SymbolTable.SemanticType.ObjectType;
-
-            var commonType = node.elements.get(0).visit(this);
-            for(int i = 1; i < node.elements.size(); ++i){
-                var currentType = node.elements.get(i).visit(this);
-                if(commonType == SymbolTable.SemanticType.IntType && currentType == SymbolTable.SemanticType.DoubleType)
-                    commonType = SymbolTable.SemanticType.DoubleType;
-                else if(commonType == SymbolTable.SemanticType.IntType && currentType == SymbolTable.SemanticType.BigIntegerType)
-                    commonType = SymbolTable.SemanticType.BigIntegerType;
-                else if(commonType == SymbolTable.SemanticType.DoubleType && currentType == SymbolTable.SemanticType.BigIntegerType)
-                    commonType = SymbolTable.SemanticType.DoubleType;
-                else if(!assignComparable(commonType, currentType)){
-                    CompilerException.semanticError("Несовместимые типы в массиве " + commonType + " и " + currentType, node.position);
-                    return SymbolTable.SemanticType.BadType;
+            case ASTNodes.ARRAY_LITERAL: {
+                var node = (ASTNodes.ArrayLiteralNode) expr;
+                if(node.elements.isEmpty())
+                    return SymbolTable.SemanticType.ObjectType;
+
+                var commonType = calcTypeVis(node.elements.get(0), context);
+                for(int i = 1; i < node.elements.size(); ++i){
+                    var currentType = calcTypeVis(node.elements.get(i), context);
+                    if(commonType == SymbolTable.SemanticType.IntType && currentType == SymbolTable.SemanticType.DoubleType)
+                        commonType = SymbolTable.SemanticType.DoubleType;
+                    else if(commonType == SymbolTable.SemanticType.IntType && currentType == SymbolTable.SemanticType.BigIntegerType)
+                        commonType = SymbolTable.SemanticType.BigIntegerType;
+                    else if(commonType == SymbolTable.SemanticType.DoubleType && currentType == SymbolTable.SemanticType.BigIntegerType)
+                        commonType = SymbolTable.SemanticType.DoubleType;
+                    else if(!assignComparable(commonType, currentType))
+                        CompilerException.semanticError("Несовместимые типы в массиве " + commonType + " и " + currentType, node.position);
                 }
+                return commonType;
             }
-            return commonType;
-        }
-        @Override public SymbolTable.SemanticType visitArrayDeclaration(ASTNodes.ArrayDeclarationNode node) throws Exception {
-            return SymbolTable.SemanticType.NoType;
-        }
-        @Override public SymbolTable.SemanticType visitAssign(ASTNodes.AssignNode node) {
-            return SymbolTable.SemanticType.NoType;
-        }
-        @Override public SymbolTable.SemanticType visitAssignOperation(ASTNodes.AssignOperationNode node) {
-            return SymbolTable.SemanticType.NoType;
-        }
-
-        // ДОБАВЛЕННЫЕ МЕТОДЫ ДЛЯ НОВЫХ УЗЛОВ:
-        @Override
-        public SymbolTable.SemanticType visitArrayAssign(ASTNodes.ArrayAssignNode node) throws Exception {
-            // Проверяем типы для присваивания элементу массива
-            var arrayType = node.array.visit(this);
-            var indexType = node.index.visit(this);
-            var exprType = node.expr.visit(this);
-
-            // Проверяем, что индекс целочисленный
-            if (indexType != SymbolTable.SemanticType.IntType) {
-                CompilerException.semanticError("Индекс массива должен быть целочисленным", node.index.position);
-                return SymbolTable.SemanticType.BadType;
-            }
-
-            // Проверяем, что левая часть - это массив
-            if (node.array instanceof ASTNodes.IdNode) {
-                String arrayName = ((ASTNodes.IdNode) node.array).name;
-                SymbolTable.SymbolInfo arrayInfo = SymbolTable.SymTable.get(arrayName);
-                if (arrayInfo == null || arrayInfo.kindType != SymbolTable.KindType.ArrayName) {
-                    CompilerException.semanticError("Ожидался массив", node.array.position);
-                    return SymbolTable.SemanticType.BadType;
-                }
-
-                // Проверяем совместимость типов
-                if (!assignComparable(arrayInfo.elementType, exprType)) {
-                    CompilerException.semanticError("Несовместимые типы при присваивании элементу массива: " +
-                            arrayInfo.elementType + " и " + exprType, node.expr.position);
-                    return SymbolTable.SemanticType.BadType;
+            case ASTNodes.FUNC_CALL: {
+                var node = (ASTNodes.FuncCallNode) expr;
+                var sym = context.get(node.name.name);
+                if(sym == null)
+                    CompilerException.semanticError("Функция с именем " + node.name.name + " не определена", node.name.position);
+                if(sym.kindType != SymbolTable.KindType.FuncName)
+                    CompilerException.semanticError("Данное имя " + node.name.name + " не является именем функции",  node.name.position);
+                if(sym.semanticType == SymbolTable.SemanticType.NoType)
+                    CompilerException.semanticError("Попытка вызвать процедуру " + node.name.name + " как функцию", node.name.position);
+                if(sym.params.length != node.pars.lst.size())
+                    CompilerException.semanticError("Несоответствие количества параметров при вызове процедуры" + node.name.name, node.name.position);
+
+                for(int i = 0; i < sym.params.length; i++){
+                    var tp = calcTypeVis(node.pars.lst.get(i), context);
+                    if(!assignComparable(sym.params[i], tp))
+                        CompilerException.semanticError("Тип аргумента функции " + node.name.name +
+                                " не соответствует типу формального параметра ", node.name.position);
                 }
+                node.name.symbol = sym;//По нему трансляторы приводят аргументы к типам параметров
+                return sym.semanticType;
             }
-
-            return SymbolTable.SemanticType.NoType;
+            default:
+                return SymbolTable.SemanticType.NoType;
         }
+    }
 
-        @Override
-        public SymbolTable.SemanticType visitArrayAssignOperation(ASTNodes.ArrayAssignOperationNode node) throws Exception {
-            var arrayType = node.array.visit(this);
-            var indexType = node.index.visit(this);
-            var exprType = node.expr.visit(this);
-
-            if (indexType != SymbolTable.SemanticType.IntType) {
-                CompilerException.semanticError("Индекс массива должен быть целочисленным", node.index.position);
-                return SymbolTable.SemanticType.BadType;
-            }
-
-            if (node.array instanceof ASTNodes.IdNode) {
-                String arrayName = ((ASTNodes.IdNode) node.array).name;
-                SymbolTable.SymbolInfo arrayInfo = SymbolTable.SymTable.get(arrayName);
-                if (arrayInfo == null || arrayInfo.kindType != SymbolTable.KindType.ArrayName) {
-                    CompilerException.semanticError("Ожидался массив", node.array.position);
-                    return SymbolTable.SemanticType.BadType;
-                }
-
-                if (arrayInfo.elementType != SymbolTable.SemanticType.IntType &&
-                        arrayInfo.elementType != SymbolTable.SemanticType.DoubleType &&
-                        arrayInfo.elementType != SymbolTable.SemanticType.BigIntegerType) {
-                    CompilerException.semanticError("Операция " + node.op + " не определена для типа " +
-                            arrayInfo.elementType, node.expr.position);
-                    return SymbolTable.SemanticType.BadType;
-                }
-
-                if (!assignComparable(arrayInfo.elementType, exprType)) {
-                    CompilerException.semanticError("Несовместимые типы при присваивании элементу массива: " +
-                            arrayInfo.elementType + " и " + exprType, node.expr.position);
-                    return SymbolTable.SemanticType.BadType;
-                }
-
-                switch (node.op) {
-                    case '+': break;
-                    case '-': break;
-                    case '*': break;
-                    case '/':
-                        if (arrayInfo.elementType == SymbolTable.SemanticType.IntType) {
-                            CompilerException.semanticError("Операция /= не определена для целочисленных типов", node.expr.position);
-                            return SymbolTable.SemanticType.BadType;
-                        }
-                        break;
-                    default:
-                        CompilerException.semanticError("Неизвестная операция " + node.op, node.expr.position);
-                        return SymbolTable.SemanticType.BadType;
-                }
-            }
-
-            return SymbolTable.SemanticType.NoType;
+    private static SymbolTable.SemanticType binOpType(ASTNodes.BinOpNode node, SymbolTable.SemanticType left,
+                                                      SymbolTable.SemanticType right) throws Exception {
+        if(contains(LexerUnit.ArithmeticOperations, node.op)){
+            if(!isNumType(left) || !isNumType(right))
+                CompilerException.semanticError("Операция " + node.operationToString() + " не определена для типов " + left + " и " + right, node.left.position);
+            else if(node.op == LexerUnit.TokenType.DIVIDE)
+                return SymbolTable.SemanticType.DoubleType;
+            else if(left == right)
+                return left;
+            return SymbolTable.SemanticType.DoubleType;
         }
 
-        @Override public SymbolTable.SemanticType visitIf(ASTNodes.IfNode node) {
-            return SymbolTable.SemanticType.NoType;
-        }
-        @Override public SymbolTable.SemanticType visitWhile(ASTNodes.WhileNode node) {
-            return SymbolTable.SemanticType.NoType;
+        else if(contains(LexerUnit.LogicalOperators, node.op)){
+            if(left != SymbolTable.SemanticType.BoolType || right != SymbolTable.SemanticType.BoolType)
+                CompilerException.semanticError("Операция " + node.operationToString() + " не определена для типов " + left + " и " + right, node.left.position);
+            return SymbolTable.SemanticType.BoolType;
         }
-        @Override
-        public SymbolTable.SemanticType visitFor(ASTNodes.ForNode forn) throws Exception {
-            return SymbolTable.SemanticType.NoType;
-        }
-        @Override public SymbolTable.SemanticType visitProcCall(ASTNodes.ProcCallNode node) throws Exception{
-            if(SymbolTable.SymTable.get(node.name) == null)
-                CompilerException.semanticError("Функция с именем " + node.name.name + " не определена", node.name.position);
-            var sym =  SymbolTable.SymTable.get(node.name.name);
-            if(sym.kindType != SymbolTable.KindType.FuncName)
-                CompilerException.semanticError("Данное имя " + node.name.name + " не является именем функции",  node.name.position);
-            if(sym.semanticType != SymbolTable.SemanticType.NoType)
-                CompilerException.semanticError("Попытка вызвать функцию " + node.name.name + " как процедуру", node.name.position);
-            if(sym.params.length != node.pars.lst.size())
-                CompilerException.semanticError("Несоответствие количества параметров при вызове процедуры" + node.name.name, node.name.position);
 
-            for(int i = 0; i < sym.params.length; i++){
-                var tp = calcTypeVis(node.pars.lst.get(i));
-                if(!assignComparable(sym.params[i], tp))
-                    CompilerException.semanticError("Тип аргумента функции " + node.name.name +
-                            " не соответствует типу формального параметра ", node.name.position);
-            }
-            return SymbolTable.SemanticType.NoType;
+        else if(contains(LexerUnit.CompareOperations, node.op)){
+            if(!isNumType(left) || !isNumType(right))
+                CompilerException.semanticError("Операция " + node.operationToString() + " не определена для типов " + left + " и " + right, node.left.position);
+            return SymbolTable.SemanticType.BoolType;
         }
-        @Override public SymbolTable.SemanticType visitFuncCall(ASTNodes.FuncCallNode node) throws Exception{
-            if(SymbolTable.SymTable.get(node.name) == null)
-                CompilerException.semanticError("Функция с именем " + node.name.name + " не определена", node.name.position);
-            var sym =  SymbolTable.SymTable.get(node.name.name);
-            if(sym.kindType != SymbolTable.KindType.FuncName)
-                CompilerException.semanticError("Данное имя " + node.name.name + " не является именем функции",  node.name.position);
-            if(sym.semanticType == SymbolTable.SemanticType.NoType)
-                CompilerException.semanticError("Попытка вызвать процедуру " + node.name.name + " как функцию", node.name.position);
-            if(sym.params.length != node.pars.lst.size())
-                CompilerException.semanticError("Несоответствие количества параметров при вызове процедуры" + node.name.name, node.name.position);
+        return null;
+    }
 
-            for(int i = 0; i < sym.params.length; i++){
-                var tp = calcTypeVis(node.pars.lst.get(i));
-                if(!assignComparable(sym.params[i], tp))
-                    CompilerException.semanticError("Тип аргумента функции " + node.name.name +
-                            " не соответствует типу формального параметра ", node.name.position);
-            }
-            return sym.semanticType;
+    /// Тип выражения для трансляторов (без проверок: недопустимая операция дает BadType).
+    /// Тип хранится в expr.type: семантическая проверка проставляет его всем узлам выражения
+    /// снизу вверх, поэтому обычно это чтение поля. Непроставленный тип вычисляется и запоминается
+    public static SymbolTable.SemanticType calcType(ASTNodes.ExprNode expr, CompilationContext context) throws Exception {
+        var type = expr.type;
+        if (type == null) {
+            type = typeOf(expr, context);
+            expr.type = type;
         }
+        return type;
     }
 
-    public static SymbolTable.SemanticType calcTypeVis(ASTNodes.ExprNode expr) throws Exception{
-        return expr.visit(new CalcTypeVisitor());
+    /// Заново вычислить и запомнить тип узла; типы детей берутся из calcType
+    public static SymbolTable.SemanticType annotate(ASTNodes.ExprNode expr, CompilationContext context) throws Exception {
+        var type = typeOf(expr, context);
+        expr.type = type;
+        return type;
     }
 
-    public static SymbolTable.SemanticType calcType(ASTNodes.ExprNode expr) throws Exception {
-        return switch (expr) {
-            case ASTNodes.IdNode id -> checkSymbolTable(id.name);
-            case ASTNodes.IntNode node -> SymbolTable.SemanticType.IntType;
-            case ASTNodes.DoubleNode node -> SymbolTable.SemanticType.DoubleType;
-            case ASTNodes.BigIntNode node -> SymbolTable.SemanticType.BigIntegerType;
-            case ASTNodes.ArrayAccessNode arrayAccess -> {
+    private static SymbolTable.SemanticType typeOf(ASTNodes.ExprNode expr, CompilationContext context) throws Exception {
+        return switch (expr.kind) {
+            case ASTNodes.ID -> {
+                var info = symbolOf((ASTNodes.IdNode) expr, context);
+                yield info != null ? info.semanticType : SymbolTable.SemanticType.BadType;
+            }
+            case ASTNodes.INT -> SymbolTable.SemanticType.IntType;
+            case ASTNodes.DOUBLE -> SymbolTable.SemanticType.DoubleType;
+            case ASTNodes.BIG_INT -> SymbolTable.SemanticType.BigIntegerType;
+            case ASTNodes.ARRAY_ACCESS -> {
+                var arrayAccess = (ASTNodes.ArrayAccessNode) expr;
                 // Обработка доступа к массиву
                 if (arrayAccess.array instanceof ASTNodes.IdNode) {
-                    String arrayName = ((ASTNodes.IdNode) arrayAccess.array).name;
-                    SymbolTable.SymbolInfo arrayInfo = SymbolTable.SymTable.get(arrayName);
+                    SymbolTable.SymbolInfo arrayInfo = symbolOf((ASTNodes.IdNode) arrayAccess.array, context);
                     if (arrayInfo != null && arrayInfo.kindType == SymbolTable.KindType.ArrayName) {
                         yield arrayInfo.elementType != null ? arrayInfo.elementType : SymbolTable.SemanticType.ObjectType;
                     }
                 }
                 yield SymbolTable.SemanticType.BadType;
             }
-            case ASTNodes.ArrayLiteralNode arrayLiteral -> {
+            case ASTNodes.ARRAY_LITERAL -> {
+                var arrayLiteral = (ASTNodes.ArrayLiteralNode) expr;
                 if (arrayLiteral.elements.isEmpty()) {
                     yield SymbolTable.SemanticType.ObjectType;
                 }
 
-                SymbolTable.SemanticType commonType = calcType(arrayLiteral.elements.get(0));
+                SymbolTable.SemanticType commonType = calcType(arrayLiteral.elements.get(0), context);
                 for (int i = 1; i < arrayLiteral.elements.size(); i++) {
-                    SymbolTable.SemanticType currentType = calcType(arrayLiteral.elements.get(i));
+                    SymbolTable.SemanticType currentType = calcType(arrayLiteral.elements.get(i), context);
                     if (commonType == SymbolTable.SemanticType.IntType && currentType == SymbolTable.SemanticType.DoubleType) {
                         commonType = SymbolTable.SemanticType.DoubleType;
                     } else if (commonType == SymbolTable.SemanticType.IntType && currentType == SymbolTable.SemanticType.BigIntegerType) {
@@ -305,24 +215,26 @@ public class CalcTypes {
                 }
                 yield commonType;
             }
-            case ASTNodes.FuncCallNode funcCall -> {
-                SymbolTable.SymbolInfo sym = SymbolTable.SymTable.get(funcCall.name.name);
+            case ASTNodes.FUNC_CALL -> {
+                var funcCall = (ASTNodes.FuncCallNode) expr;
+                SymbolTable.SymbolInfo sym = context.get(funcCall.name.name);
                 if (sym != null && sym.kindType == SymbolTable.KindType.FuncName) {
+                    funcCall.name.symbol = sym;
                     yield sym.semanticType;
                 }
                 yield SymbolTable.SemanticType.BadType;
             }
-            case ASTNodes.BinOpNode bin -> {
-                var left = calcType(bin.left);
-                var right = calcType(bin.right);
+            case ASTNodes.BIN_OP -> {
+                var bin = (ASTNodes.BinOpNode) expr;
+                var left = calcType(bin.left, context);
+                var right = calcType(bin.right, context);
 
                 if (left == null || right == null) {
                     yield SymbolTable.SemanticType.BadType;
                 }
 
-                if (Arrays.stream(LexerUnit.ArithmeticOperations).anyMatch(op -> op == bin.op)) {
-                    if (!Arrays.stream(SymbolTable.NumTypes).anyMatch(l -> l == left) ||
-                            !Arrays.stream(SymbolTable.NumTypes).anyMatch(l -> l == right)) {
+                if (contains(LexerUnit.ArithmeticOperations, bin.op)) {
+                    if (!isNumType(left) || !isNumType(right)) {
                         yield SymbolTable.SemanticType.BadType;
                     } else if (bin.op == LexerUnit.TokenType.DIVIDE) {
                         yield SymbolTable.SemanticType.DoubleType; // Деление всегда дает double
@@ -339,14 +251,13 @@ public class CalcTypes {
                     } else {
                         yield SymbolTable.SemanticType.BadType;
                     }
-                } else if (Arrays.stream(LexerUnit.LogicalOperators).anyMatch(op -> op == bin.op)) {
+                } else if (contains(LexerUnit.LogicalOperators, bin.op)) {
                     if (left != SymbolTable.SemanticType.BoolType || right != SymbolTable.SemanticType.BoolType) {
                         yield SymbolTable.SemanticType.BadType;
                     }
                     yield SymbolTable.SemanticType.BoolType;
-                } else if (Arrays.stream(LexerUnit.CompareOperations).anyMatch(op -> op == bin.op)) {
-                    if (!Arrays.stream(SymbolTable.NumTypes).anyMatch(l -> l == left) ||
-                            !Arrays.stream(SymbolTable.NumTypes).anyMatch(l -> l == right)) {
+                } else if (contains(LexerUnit.CompareOperations, bin.op)) {
+                    if (!isNumType(left) || !isNumType(right)) {
                         yield SymbolTable.SemanticType.BadType;
                     }
                     yield SymbolTable.SemanticType.BoolType;
@@ -360,9 +271,14 @@ public class CalcTypes {
         };
     }
 
-    public static SymbolTable.SemanticType checkSymbolTable(String name) {
-        return SymbolTable.SymTable.get(name) != null?
-                SymbolTable.SymTable.get(name).semanticType :
+    /// Символ идентификатора: проставленный SemanticCheck, а у непроверенного узла - из контекста
+    private static SymbolTable.SymbolInfo symbolOf(ASTNodes.IdNode id, CompilationContext context) {
+        return id.symbol != null ? id.symbol : context.get(id);
+    }
+
+    public static SymbolTable.SemanticType checkSymbolTable(String name, CompilationContext context) {
+        return context.get(name) != null?
+                context.get(name).semanticType :
                 SymbolTable.SemanticType.BadType;
     }
 }
\ No newline at end of file
@@ -0,0 +1,161 @@
+package SemanticCheckLogic;
+
+import Basic.ASTNodes;
+import Interpret.Memory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/// Состояние одной компиляции: таблица символов с вложенными областями видимости
+/// и адреса переменных программы. Создается на каждую программу и передается
+/// SemanticCheck, CalcTypes и трансляторам, поэтому разные программы можно компилировать
+/// параллельно, каждую в своем потоке со своим контекстом. Сам контекст не потокобезопасен.
+///
+/// Память исполнения (Interpret.Memory) по-прежнему одна на процесс: адреса переменных
+/// выдаются контекстом с нуля, а перед исполнением initializeMemory заново раскладывает
+/// переменные этой программы в Memory.
+public class CompilationContext {
+    /// Область видимости: свои символы и ссылка на объемлющую область
+    public static class Scope {
+        public final Scope parent;
+        private final HashMap<String, SymbolTable.SymbolInfo> symbols = new HashMap<>();
+
+        public Scope(Scope parent) {
+            this.parent = parent;
+        }
+
+        /// Символ этой области или объемлющих, null - не найден
+        public SymbolTable.SymbolInfo lookup(String name) {
+            for (var scope = this; scope != null; scope = scope.parent) {
+                var info = scope.symbols.get(name);
+                if (info != null)
+                    return info;
+            }
+            return null;
+        }
+
+        /// Символ только этой области
+        public SymbolTable.SymbolInfo getLocal(String name) {
+            return symbols.get(name);
+        }
+    }
+
+    // Стандартные функции - общая для всех контекстов область, после инициализации только читается.
+    // Здесь только то, что умеют вычислять оба транслятора (InterpretTree и ThreeAddressVisitor)
+    private static final Scope STANDARD = new Scope(null);
+
+    static {
+        declare(STANDARD, new SymbolTable.SymbolInfo("sqrt", SymbolTable.KindType.FuncName, SymbolTable.SemanticType.DoubleType, -1, SymbolTable.SemanticType.DoubleType));
+        // print - процедура: вызвать ее в выражении нельзя
+        declare(STANDARD, new SymbolTable.SymbolInfo("print", SymbolTable.KindType.FuncName, SymbolTable.SemanticType.NoType, -1, SymbolTable.SemanticType.DoubleType));
+    }
+
+    public final Scope global = new Scope(STANDARD);//Переменные программы
+    private Scope scope = global;
+
+    // Найденные символы по номеру имени, который лексер дал идентификатору: повторные
+    // обращения к той же переменной обходятся без хеширования строки. Ненайденные имена
+    // не запоминаются - символ может быть объявлен позже. При смене области кэш сбрасывается
+    private SymbolTable.SymbolInfo[] byId = new SymbolTable.SymbolInfo[64];
+
+    // Типы переменных в порядке адресов: по ним initializeMemory раскладывает Memory
+    private final ArrayList<SymbolTable.SemanticType> variableTypes = new ArrayList<>();
+    private final ArrayList<Object> initialValues = new ArrayList<>();
+
+    private static void declare(Scope scope, SymbolTable.SymbolInfo info) {
+        scope.symbols.put(info.name, info);
+    }
+
+    /// Стандартная функция name. Вызов разрешен в нее, только если IdNode.symbol - этот же объект:
+    /// одноименный символ программы стандартной функцией не считается
+    public static SymbolTable.SymbolInfo standard(String name) {
+        return STANDARD.getLocal(name);
+    }
+
+    public Scope currentScope() {
+        return scope;
+    }
+
+    /// Открыть вложенную область (блок, тело функции)
+    public Scope enterScope() {
+        scope = new Scope(scope);
+        Arrays.fill(byId, null);
+        return scope;
+    }
+
+    /// Закрыть текущую область; символы из нее больше не видны
+    public void exitScope() {
+        if (scope == global)
+            throw new IllegalStateException("Глобальную область закрыть нельзя");
+        scope = scope.parent;
+        Arrays.fill(byId, null);
+    }
+
+    /// Объявить символ в текущей области
+    public void declare(SymbolTable.SymbolInfo info) {
+        declare(scope, info);
+        if (scope != global)
+            Arrays.fill(byId, null);//Символ мог закрыть одноименный из объемлющей области
+    }
+
+    public SymbolTable.SymbolInfo get(String name) {
+        return scope.lookup(name);
+    }
+
+    public SymbolTable.SymbolInfo get(ASTNodes.IdNode id) {
+        int nameId = id.nameId;
+        if (nameId < 0)
+            return scope.lookup(id.name);
+        if (nameId < byId.length && byId[nameId] != null)
+            return byId[nameId];
+        var info = scope.lookup(id.name);
+        if (info != null) {
+            if (nameId >= byId.length)
+                byId = Arrays.copyOf(byId, Math.max(nameId + 1, byId.length * 2));
+            byId[nameId] = info;
+        }
+        return info;
+    }
+
+    /// Адрес новой переменной; значение initialValue она получит в initializeMemory
+    public int allocateVariable(SymbolTable.SemanticType type, Object initialValue) {
+        variableTypes.add(type);
+        initialValues.add(initialValue);
+        return variableTypes.size() - 1;
+    }
+
+    public int variableCount() {
+        return variableTypes.size();
+    }
+
+    /// Очистить Memory и разместить в ней переменные программы по выданным адресам.
+    /// Вызывается перед исполнением дерева, полученного с этим контекстом
+    public void initializeMemory() {
+        Memory.reset();
+        for (int i = 0; i < variableTypes.size(); i++)
+            SymbolTable.allocateVariable(variableTypes.get(i), initialValues.get(i));
+    }
+
+    public SymbolTable.SymbolInfo getArrayInfo(String name) {
+        var info = get(name);
+        if (info != null && info.kindType == SymbolTable.KindType.ArrayName) {
+            return info;
+        }
+        return null;
+    }
+
+    public boolean isArray(String name) {
+        return getArrayInfo(name) != null;
+    }
+
+    public SymbolTable.SemanticType getArrayElementType(String name) {
+        var info = getArrayInfo(name);
+        return info != null ? info.elementType : SymbolTable.SemanticType.BadType;
+    }
+
+    public int getArraySize(String name) {
+        var info = getArrayInfo(name);
+        return info != null ? info.size : -1;
+    }
+}
@@ -1,28 +1,69 @@
 package SemanticCheckLogic;
 
 import Basic.ASTNodes;
+import Basic.ASTWalker;
 import ExceptionLogic.CompilerException;
 
 import java.math.BigInteger;
 
-public class SemanticCheck extends AutoVisitorUnit {
+/// Семантическая проверка программы: check(program).
+/// Операторы разбираются switch по node.kind, а идентификаторы в выражениях
+/// находятся обходом ASTWalker по явному стеку (порядок тот же, что у AutoVisitorUnit).
+/// Тем же обходом узлам выражений проставляется тип (ExprNode.type), который потом читают трансляторы.
+/// Символы и адреса переменных попадают в context, который затем передается трансляторам
+public class SemanticCheck extends ASTWalker {
+    private final CompilationContext context;
 
+    public SemanticCheck(CompilationContext context) {
+        this.context = context;
+    }
+
+    public void check(ASTNodes.Node node) throws Exception {
+        switch (node.kind) {
+            case ASTNodes.STATEMENT_LIST -> {
+                for (var statement : ((ASTNodes.StatementListNode) node).statements)
+                    check(statement);
+            }
+            case ASTNodes.ARRAY_ASSIGN -> checkArrayAssign((ASTNodes.ArrayAssignNode) node);
+            case ASTNodes.ARRAY_ASSIGN_OPERATION -> checkArrayAssignOperation((ASTNodes.ArrayAssignOperationNode) node);
+            case ASTNodes.ASSIGN -> checkAssign((ASTNodes.AssignNode) node);
+            case ASTNodes.ASSIGN_OPERATION -> checkAssignOperation((ASTNodes.AssignOperationNode) node);
+            case ASTNodes.IF -> checkIf((ASTNodes.IfNode) node);
+            case ASTNodes.WHILE -> checkWhile((ASTNodes.WhileNode) node);
+            case ASTNodes.FOR -> checkFor((ASTNodes.ForNode) node);
+            default -> walk(node);//Вызов процедуры, выражение
+        }
+    }
+
+    /// Идентификаторы выражения получают адрес переменной
     @Override
-    public void visitArrayAssign(ASTNodes.ArrayAssignNode node) throws Exception {
-        node.array.visitP(this);
-        node.index.visitP(this);
-        node.expr.visitP(this);
+    protected boolean enter(ASTNodes.Node node) throws Exception {
+        if (node.kind == ASTNodes.ID)
+            checkId((ASTNodes.IdNode) node);
+        return true;
+    }
+
+    /// Дети узла уже обойдены и имеют тип, поэтому тип узла вычисляется за один шаг
+    @Override
+    protected void leave(ASTNodes.Node node) throws Exception {
+        if (node instanceof ASTNodes.ExprNode expr && node.kind != ASTNodes.ARRAY_DECLARATION)//У объявления массива нет типа
+            CalcTypes.annotate(expr, context);
+    }
 
-        SymbolTable.SemanticType indexType = CalcTypes.calcTypeVis(node.index);
+    private void checkArrayAssign(ASTNodes.ArrayAssignNode node) throws Exception {
+        walk(node.array);
+        walk(node.index);
+        walk(node.expr);
+
+        SymbolTable.SemanticType indexType = CalcTypes.calcTypeVis(node.index, context);
         if (indexType != SymbolTable.SemanticType.IntType) {
             CompilerException.semanticError("Индекс массива должен быть целочисленным", node.index.position);
         }
 
         if (node.array instanceof ASTNodes.IdNode) {
-            String arrayName = ((ASTNodes.IdNode) node.array).name;
-            SymbolTable.SymbolInfo arrayInfo = SymbolTable.SymTable.get(arrayName);
+            SymbolTable.SymbolInfo arrayInfo = context.get((ASTNodes.IdNode) node.array);
             if (arrayInfo != null && arrayInfo.kindType == SymbolTable.KindType.ArrayName) {
-                SymbolTable.SemanticType exprType = CalcTypes.calcTypeVis(node.expr);
+                SymbolTable.SemanticType exprType = CalcTypes.calcTypeVis(node.expr, context);
                 if (!CalcTypes.assignComparable(arrayInfo.elementType, exprType)) {
                     CompilerException.semanticError("Несовместимые типы при присваивании элементу массива", node.expr.position);
                 }
@@ -30,22 +71,20 @@ public class SemanticCheck extends AutoVisitorUnit {
         }
     }
 
-    @Override
-    public void visitArrayAssignOperation(ASTNodes.ArrayAssignOperationNode node) throws Exception {
-        node.array.visitP(this);
-        node.index.visitP(this);
-        node.expr.visitP(this);
+    private void checkArrayAssignOperation(ASTNodes.ArrayAssignOperationNode node) throws Exception {
+        walk(node.array);
+        walk(node.index);
+        walk(node.expr);
 
-        SymbolTable.SemanticType indexType = CalcTypes.calcTypeVis(node.index);
+        SymbolTable.SemanticType indexType = CalcTypes.calcTypeVis(node.index, context);
         if (indexType != SymbolTable.SemanticType.IntType) {
             CompilerException.semanticError("Индекс массива должен быть целочисленным", node.index.position);
         }
 
         if (node.array instanceof ASTNodes.IdNode) {
-            String arrayName = ((ASTNodes.IdNode) node.array).name;
-            SymbolTable.SymbolInfo arrayInfo = SymbolTable.SymTable.get(arrayName);
+            SymbolTable.SymbolInfo arrayInfo = context.get((ASTNodes.IdNode) node.array);
             if (arrayInfo != null && arrayInfo.kindType == SymbolTable.KindType.ArrayName) {
-                SymbolTable.SemanticType exprType = CalcTypes.calcTypeVis(node.expr);
+                SymbolTable.SemanticType exprType = CalcTypes.calcTypeVis(node.expr, context);
                 if (!CalcTypes.assignComparable(arrayInfo.elementType, exprType)) {
                     CompilerException.semanticError("Несовместимые типы при присваивании элементу массива", node.expr.position);
                 }
@@ -53,12 +92,11 @@ public class SemanticCheck extends AutoVisitorUnit {
         }
     }
 
-    @Override
-    public void visitAssign(ASTNodes.AssignNode node) throws Exception {
-        node.expr.visitP(this);
+    private void checkAssign(ASTNodes.AssignNode node) throws Exception {
+        walk(node.expr);
 
-        if (SymbolTable.SymTable.get(node.id.name) == null) {
-            SymbolTable.SemanticType type = CalcTypes.calcTypeVis(node.expr);
+        if (context.get(node.id) == null) {
+            SymbolTable.SemanticType type = CalcTypes.calcTypeVis(node.expr, context);
 
             Object initialValue;
             switch(type) {
@@ -79,28 +117,28 @@ public class SemanticCheck extends AutoVisitorUnit {
                     return;
             }
 
-            int address = SymbolTable.allocateVariable(type, initialValue);
+            int address = context.allocateVariable(type, initialValue);
 
-            SymbolTable.SymTable.put(node.id.name,
-                    new SymbolTable.SymbolInfo(
-                            node.id.name,
-                            SymbolTable.KindType.VarName,
-                            type,
-                            address
-                    )
+            var symInfo = new SymbolTable.SymbolInfo(
+                    node.id.name,
+                    SymbolTable.KindType.VarName,
+                    type,
+                    address
             );
+            context.declare(symInfo);
 
-            node.id.ind = address;
+            resolve(node.id, symInfo);
+            node.id.type = type;
 
         } else {
-            SymbolTable.SymbolInfo symInfo = SymbolTable.SymTable.get(node.id.name);
+            SymbolTable.SymbolInfo symInfo = context.get(node.id);
 
             if (symInfo.kindType == SymbolTable.KindType.FuncName) {
                 CompilerException.semanticError("Имени стандартной функции " + node.id.name + " нельзя присвоить значение", node.id.position);
                 return;
             }
 
-            SymbolTable.SemanticType exprType = CalcTypes.calcTypeVis(node.expr);
+            SymbolTable.SemanticType exprType = CalcTypes.calcTypeVis(node.expr, context);
             SymbolTable.SemanticType varType = symInfo.semanticType;
 
             if (!CalcTypes.assignComparable(varType, exprType)) {
@@ -109,27 +147,27 @@ public class SemanticCheck extends AutoVisitorUnit {
                 return;
             }
 
-            node.id.ind = symInfo.address;
+            resolve(node.id, symInfo);
+            node.id.type = varType;
         }
     }
 
-    @Override
-    public void visitAssignOperation(ASTNodes.AssignOperationNode node) throws Exception {
-        node.expr.visitP(this);
+    private void checkAssignOperation(ASTNodes.AssignOperationNode node) throws Exception {
+        walk(node.expr);
 
-        if (SymbolTable.SymTable.get(node.id.name) == null) {
+        if (context.get(node.id) == null) {
             CompilerException.semanticError("Переменная " + node.id.name + " не определена", node.id.position);
             return;
         }
 
-        SymbolTable.SymbolInfo symInfo = SymbolTable.SymTable.get(node.id.name);
+        SymbolTable.SymbolInfo symInfo = context.get(node.id);
 
         if (symInfo.kindType == SymbolTable.KindType.FuncName) {
             CompilerException.semanticError("Имени стандартной функции " + node.id.name + " нельзя присвоить значение", node.id.position);
             return;
         }
 
-        SymbolTable.SemanticType exprType = CalcTypes.calcTypeVis(node.expr);
+        SymbolTable.SemanticType exprType = CalcTypes.calcTypeVis(node.expr, context);
         SymbolTable.SemanticType varType = symInfo.semanticType;
 
         // Разрешаем операции для Int, Double и BigInteger
@@ -163,51 +201,54 @@ public class SemanticCheck extends AutoVisitorUnit {
                 return;
         }
 
-        node.id.ind = symInfo.address;
+        resolve(node.id, symInfo);
+        node.id.type = varType;
     }
-    @Override
-    public void visitIf(ASTNodes.IfNode node) throws Exception {
-        node.cond.visitP(this);
-        SymbolTable.SemanticType type = CalcTypes.calcTypeVis(node.cond);
+    private void checkIf(ASTNodes.IfNode node) throws Exception {
+        walk(node.cond);
+        SymbolTable.SemanticType type = CalcTypes.calcTypeVis(node.cond, context);
         if (type != SymbolTable.SemanticType.BoolType) {
             CompilerException.semanticError("Ожидалось выражение логического типа, а встречено выражение типа " + type, node.cond.position);
         }
-        node.then.visitP(this);
+        check(node.then);
         if (node.elseif != null) {
-            node.elseif.visitP(this);
+            check(node.elseif);
         }
     }
 
-    @Override
-    public void visitWhile(ASTNodes.WhileNode node) throws Exception {
-        node.cond.visitP(this);
-        SymbolTable.SemanticType type = CalcTypes.calcTypeVis(node.cond);
+    private void checkWhile(ASTNodes.WhileNode node) throws Exception {
+        walk(node.cond);
+        SymbolTable.SemanticType type = CalcTypes.calcTypeVis(node.cond, context);
         if (type != SymbolTable.SemanticType.BoolType) {
             CompilerException.semanticError("Ожидалось выражение логического типа, а встречено выражение типа " + type, node.cond.position);
         }
-        node.stat.visitP(this);
+        check(node.stat);
     }
 
-    @Override
-    public void visitFor(ASTNodes.ForNode node) throws Exception {
-        node.start.visitP(this);
-        node.condition.visitP(this);
-        SymbolTable.SemanticType type = CalcTypes.calcTypeVis(node.condition);
+    private void checkFor(ASTNodes.ForNode node) throws Exception {
+        check(node.start);
+        walk(node.condition);
+        SymbolTable.SemanticType type = CalcTypes.calcTypeVis(node.condition, context);
         if (type != SymbolTable.SemanticType.BoolType) {
             CompilerException.semanticError("Ожидалось выражение логического типа, а встречено выражение типа " + type, node.condition.position);
         }
-        node.increment.visitP(this);
-        node.body.visitP(this);
+        check(node.increment);
+        check(node.body);
     }
 
-    @Override
-    public void visitId(ASTNodes.IdNode node) throws Exception {
-        SymbolTable.SymbolInfo symInfo = SymbolTable.SymTable.get(node.name);
+    private void checkId(ASTNodes.IdNode node) throws Exception {
+        SymbolTable.SymbolInfo symInfo = context.get(node);
         if (symInfo == null) {
             CompilerException.semanticError("Идентификатор " + node.name + " не определен", node.position);
             return;
         }
 
+        resolve(node, symInfo);
+    }
+
+    /// Запомнить символ и слот на узле: дальше трансляторы берут их с узла, не ища имя
+    private static void resolve(ASTNodes.IdNode node, SymbolTable.SymbolInfo symInfo) {
+        node.symbol = symInfo;
         node.ind = symInfo.address;
     }
 }
\ No newline at end of file
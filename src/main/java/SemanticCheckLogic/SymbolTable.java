@@ -3,9 +3,6 @@ package SemanticCheckLogic;
 import Interpret.Memory;
 
 import java.math.BigInteger;
-import java.util.ArrayList;
-import java.util.Dictionary;
-import java.util.Hashtable;
 
 public class SymbolTable {
     public enum SemanticType{IntType, DoubleType, BoolType, BigIntegerType,
@@ -52,17 +49,6 @@ public class SymbolTable {
     }
 
     public static SemanticType[] NumTypes = new SemanticType[]{SemanticType.IntType, SemanticType.DoubleType, SemanticType.BigIntegerType };
-    public static Dictionary<String, SymbolInfo> SymTable = new Hashtable<String, SymbolInfo>(){};
-
-    public static void initStandardFunctionsTable(){
-        SymTable.put("sqrt", new SymbolInfo("sqrt", KindType.FuncName, SemanticType.DoubleType, -1, SemanticType.DoubleType));
-        SymTable.put("print", new SymbolInfo("print", KindType.FuncName, SemanticType.AnyType, -1, SemanticType.DoubleType));
-        SymTable.put("length", new SymbolInfo("length", KindType.FuncName, SemanticType.IntType, -1, SemanticType.ObjectType));
-    }
-
-    static {
-        initStandardFunctionsTable();
-    }
 
     public static int allocateVariable(SemanticType type, Object initialValue) {
         int address = -1;
@@ -110,27 +96,4 @@ public class SymbolTable {
 
         return address;
     }
-
-    public static SymbolInfo getArrayInfo(String name) {
-        SymbolInfo info = SymTable.get(name);
-        if (info != null && info.kindType == KindType.ArrayName) {
-            return info;
-        }
-        return null;
-    }
-
-    public static boolean isArray(String name) {
-        SymbolInfo info = SymTable.get(name);
-        return info != null && info.kindType == KindType.ArrayName;
-    }
-
-    public static SemanticType getArrayElementType(String name) {
-        SymbolInfo info = getArrayInfo(name);
-        return info != null ? info.elementType : SemanticType.BadType;
-    }
-
-    public static int getArraySize(String name) {
-        SymbolInfo info = getArrayInfo(name);
-        return info != null ? info.size : -1;
-    }
 }
\ No newline at end of file
@@ -1,10 +1,14 @@
 package VirtualMachine;
 
+import SemanticCheckLogic.CompilationContext;
+import SemanticCheckLogic.SymbolTable;
+
 import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Stack;
 import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
 import java.math.BigInteger;
 
 public class SimpleVirtualMachine {
@@ -16,10 +20,13 @@ public class SimpleVirtualMachine {
     private static Stack<ValueType> paramStack = new Stack<ValueType>();
     private static ThreeAddressCode[] program;
     private static Hashtable<String, Runnable> standardFunctions = new Hashtable<String, Runnable>();
+    // Стандартные функции со значением double по символу из CompilationContext: аргумент - вершина paramStack
+    private static Hashtable<SymbolTable.SymbolInfo, ToDoubleFunction<ValueType>> realFunctions = new Hashtable<SymbolTable.SymbolInfo, ToDoubleFunction<ValueType>>();
 
     static {
         standardFunctions.put("Print", () -> executePrintFunction());
         standardFunctions.put("print", () -> executePrintFunction());
+        realFunctions.put(CompilationContext.standard("sqrt"), value -> Math.sqrt(value.real));
     }
 
     private static int programCounter = 0;
@@ -100,16 +107,18 @@ public class SimpleVirtualMachine {
 
         switch(tar.command){
             case ThreeAddressCode.Commands.ICAAS:
-                if(tar.IValue != 0)
-                    memory[tar.indexInMemory].integer = tar.IValue;
-                else if (tar.indexOfFirstOperand >= 0)
+                // Копия из ячейки или константа; константа 0 тоже записывается
+                if (tar.indexOfFirstOperand >= 0)
                     memory[tar.indexInMemory].integer = memory[tar.indexOfFirstOperand].integer;
+                else
+                    memory[tar.indexInMemory].integer = tar.IValue;
                 break;
             case ThreeAddressCode.Commands.RCAAS:
-                if(tar.RValue != 0)
-                    memory[tar.indexInMemory].real = tar.RValue;
-                else if (tar.indexOfFirstOperand >= 0)
+                // Копия из ячейки или константа; константа 0 тоже записывается
+                if (tar.indexOfFirstOperand >= 0)
                     memory[tar.indexInMemory].real = memory[tar.indexOfFirstOperand].real;
+                else
+                    memory[tar.indexInMemory].real = tar.RValue;
                 break;
             case ThreeAddressCode.Commands.BCAAS:
                 memory[tar.indexInMemory].bool = tar.BValue;
@@ -378,13 +387,14 @@ public class SimpleVirtualMachine {
                 break;
 
             // Type conversions
+            // Преобразования (createConvert): откуда - indexOfFirstOperand, куда - indexInMemory
             case ThreeAddressCode.Commands.CONITR:
-                if (tar.indexOfFirstOperand >= 0 && tar.indexOfSecondOperand >= 0)
-                    memory[tar.indexOfFirstOperand].real = memory[tar.indexOfSecondOperand].integer;
+                if (tar.indexOfFirstOperand >= 0)
+                    memory[tar.indexInMemory].real = memory[tar.indexOfFirstOperand].integer;
                 break;
             case ThreeAddressCode.Commands.CONITBI:
-                if (tar.indexOfFirstOperand >= 0 && tar.indexOfSecondOperand >= 0)
-                    memory[tar.indexOfFirstOperand].bigInteger = BigInteger.valueOf(memory[tar.indexOfSecondOperand].integer);
+                if (tar.indexOfFirstOperand >= 0)
+                    memory[tar.indexInMemory].bigInteger = BigInteger.valueOf(memory[tar.indexOfFirstOperand].integer);
                 break;
             case ThreeAddressCode.Commands.CONBITI:
                 if (tar.indexOfFirstOperand >= 0 && tar.indexOfSecondOperand >= 0)
@@ -396,7 +406,12 @@ public class SimpleVirtualMachine {
                 break;
 
             case ThreeAddressCode.Commands.CALL:
-                if(standardFunctions.containsKey(tar.label)){
+                if(tar.function != null && realFunctions.containsKey(tar.function)){
+                    var value = realFunctions.get(tar.function).applyAsDouble(paramStack.peek());
+                    if (tar.indexInMemory >= 0)
+                        memory[tar.indexInMemory].real = value;
+                }
+                else if(standardFunctions.containsKey(tar.label)){
                     standardFunctions.get(tar.label).run();
                     if (tar.indexInMemory >= 0) {
                         memory[tar.indexInMemory].integer = 0;
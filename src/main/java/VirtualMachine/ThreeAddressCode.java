@@ -1,5 +1,7 @@
 package VirtualMachine;
 
+import SemanticCheckLogic.SymbolTable;
+
 import java.math.BigInteger;
 
 public class ThreeAddressCode {
@@ -125,6 +127,7 @@ public class ThreeAddressCode {
     public BigInteger BIValue;
     public String label;
     public ValueType value;
+    public SymbolTable.SymbolInfo function;//Стандартная функция, в которую разрешен CALL, или null
 
 
     public static ThreeAddressCode create(Commands command) {
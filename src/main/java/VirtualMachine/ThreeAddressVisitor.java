@@ -2,23 +2,35 @@ package VirtualMachine;
 
 import Basic.*;
 import SemanticCheckLogic.CalcTypes;
+import SemanticCheckLogic.CompilationContext;
 import SemanticCheckLogic.SymbolTable;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.Stack;
 
 public class ThreeAddressVisitor implements ASTNodes.IVisitorP{
+    private final CompilationContext context;//Контекст, с которым дерево прошло SemanticCheck
     private int tempCounter = 100;
     private int labelCounter = 0;
     private Hashtable<String, Integer> labelAddresses = new Hashtable<String, Integer>();
-    private Hashtable<String, Integer> variableAddresses = new Hashtable<String, Integer>();
+    private Hashtable<String, Integer> unresolvedAddresses = new Hashtable<String, Integer>();
     private ArrayList<ThreeAddressCode> code = new ArrayList<ThreeAddressCode>();
-    private int nextVariableAddress = 0;
 
     private Stack<Integer> resultStack = new Stack<Integer>();
 
+    // Временные переменные операций текущего оператора. После Basic.CommonSubexpressions
+    // общий узел встречается в операторе несколько раз, и его значение берется из уже
+    // вычисленной временной. Код выражений внутри оператора линейный, поэтому это корректно;
+    // между операторами (и между итерациями цикла) значения не переносятся
+    private final IdentityHashMap<ASTNodes.ExprNode, Integer> sharedTemps = new IdentityHashMap<>();
+
+    public ThreeAddressVisitor(CompilationContext context) {
+        this.context = context;
+    }
+
     private static final Hashtable<String, ThreeAddressCode.Commands> binOpTable = new Hashtable<String, ThreeAddressCode.Commands>() {{
         put("INTEGER_INTEGER_PLUS", ThreeAddressCode.Commands.IADD);
         put("INTEGER_INTEGER_MINUS", ThreeAddressCode.Commands.ISUB);
@@ -110,10 +122,17 @@ public class ThreeAddressVisitor implements ASTNodes.IVisitorP{
 
     private String newLabel(){ return "L" + labelCounter++; }
 
-    private int getVariableAddress(String name){
-        if(variableAddresses.get(name) == null)
-            variableAddresses.put(name, nextVariableAddress++);
-        return variableAddresses.get(name);
+    /// Адрес переменной - слот, который ей выдал SemanticCheck (IdNode.ind).
+    /// Непроверенным узлам (объявления массивов) адрес выделяется по имени после переменных программы
+    private int getVariableAddress(ASTNodes.IdNode id){
+        if(id.symbol != null)
+            return id.ind;
+        var address = unresolvedAddresses.get(id.name);
+        if(address == null) {
+            address = context.variableCount() + unresolvedAddresses.size();
+            unresolvedAddresses.put(id.name, address);
+        }
+        return address;
     }
 
     public ArrayList<ThreeAddressCode> getCode(){
@@ -125,6 +144,12 @@ public class ThreeAddressVisitor implements ASTNodes.IVisitorP{
     @Override public void visitStatementNode(ASTNodes.StatementNode node) {}
 
     @Override public void visitBinOp(ASTNodes.BinOpNode node) throws Exception{
+        Integer sharedTemp = sharedTemps.get(node);
+        if(sharedTemp != null){
+            pushResult(sharedTemp);
+            return;
+        }
+
         node.left.visitP(this);
         int left = popResult();
 
@@ -133,8 +158,8 @@ public class ThreeAddressVisitor implements ASTNodes.IVisitorP{
 
         int res = newTemp();
 
-        var leftType = CalcTypes.calcType(node.left);
-        var rightType = CalcTypes.calcType(node.right);
+        var leftType = CalcTypes.calcType(node.left, context);
+        var rightType = CalcTypes.calcType(node.right, context);
 
         if(leftType == SymbolTable.SemanticType.IntType && rightType == SymbolTable.SemanticType.DoubleType){
             int convert = newTemp();
@@ -270,8 +295,7 @@ public class ThreeAddressVisitor implements ASTNodes.IVisitorP{
             }
         }
 
-
-
+        sharedTemps.put(node, res);
         pushResult(res);
     }
 
@@ -304,10 +328,10 @@ public class ThreeAddressVisitor implements ASTNodes.IVisitorP{
     }
 
     public void visitId(ASTNodes.IdNode node) throws Exception {
-        int address = getVariableAddress(node.name);
+        int address = getVariableAddress(node);
         // Создаем временную переменную и копируем значение
         int temp = newTemp();
-        var varType = CalcTypes.calcType(node);
+        var varType = CalcTypes.calcType(node, context);
 
         if(varType == SymbolTable.SemanticType.DoubleType)
             code.add(ThreeAddressCode.createAssign(ThreeAddressCode.Commands.RASS, temp, address));
@@ -322,11 +346,12 @@ public class ThreeAddressVisitor implements ASTNodes.IVisitorP{
     }
 
     public void visitAssign(ASTNodes.AssignNode node) throws  Exception{
+        sharedTemps.clear();
         // Оптимизация для констант
         if (node.expr instanceof ASTNodes.IntNode) {
             ASTNodes.IntNode intNode = (ASTNodes.IntNode) node.expr;
-            int address = getVariableAddress(node.id.name);
-            var varType = CalcTypes.calcType(node.id);
+            int address = getVariableAddress(node.id);
+            var varType = CalcTypes.calcType(node.id, context);
 
             if (varType == SymbolTable.SemanticType.DoubleType) {
                 code.add(ThreeAddressCode.createConst(ThreeAddressCode.Commands.RCAAS, address, (double)intNode.value));
@@ -340,8 +365,8 @@ public class ThreeAddressVisitor implements ASTNodes.IVisitorP{
         }
         else if (node.expr instanceof ASTNodes.DoubleNode) {
             ASTNodes.DoubleNode doubleNode = (ASTNodes.DoubleNode) node.expr;
-            int address = getVariableAddress(node.id.name);
-            var varType = CalcTypes.calcType(node.id);
+            int address = getVariableAddress(node.id);
+            var varType = CalcTypes.calcType(node.id, context);
 
             if (varType == SymbolTable.SemanticType.IntType) {
                 code.add(ThreeAddressCode.createConst(ThreeAddressCode.Commands.ICAAS, address, (int)doubleNode.value));
@@ -355,8 +380,8 @@ public class ThreeAddressVisitor implements ASTNodes.IVisitorP{
         }
         else if(node.expr instanceof ASTNodes.BigIntNode) {
             ASTNodes.BigIntNode bigIntNode = (ASTNodes.BigIntNode) node.expr;
-            int address = getVariableAddress(node.id.name);
-            var varType = CalcTypes.calcType(node.id);
+            int address = getVariableAddress(node.id);
+            var varType = CalcTypes.calcType(node.id, context);
 
             BigInteger bigIntValue = new BigInteger(bigIntNode.value);
 
@@ -371,8 +396,8 @@ public class ThreeAddressVisitor implements ASTNodes.IVisitorP{
         else {
             node.expr.visitP(this);
             int exprResult = popResult();
-            int address = getVariableAddress(node.id.name);
-            var exprType = CalcTypes.calcType(node.expr);
+            int address = getVariableAddress(node.id);
+            var exprType = CalcTypes.calcType(node.expr, context);
 
             if(exprType == SymbolTable.SemanticType.DoubleType)
                 code.add(ThreeAddressCode.createAssign(ThreeAddressCode.Commands.RASS, address, exprResult));
@@ -389,8 +414,9 @@ public class ThreeAddressVisitor implements ASTNodes.IVisitorP{
     }
 
     public void visitAssignOperation(ASTNodes.AssignOperationNode node) throws  Exception{
-        int address = getVariableAddress(node.id.name);
-        var varType = CalcTypes.calcType(node.id);
+        sharedTemps.clear();
+        int address = getVariableAddress(node.id);
+        var varType = CalcTypes.calcType(node.id, context);
 
         // Загружаем текущее значение переменной
         int currentValueTemp = newTemp();
@@ -409,7 +435,7 @@ public class ThreeAddressVisitor implements ASTNodes.IVisitorP{
         // Вычисляем выражение
         node.expr.visitP(this);
         int exprResult = popResult();
-        var exprType = CalcTypes.calcType(node.expr);
+        var exprType = CalcTypes.calcType(node.expr, context);
 
         // Конвертируем типы если необходимо
         if(varType == SymbolTable.SemanticType.DoubleType && exprType == SymbolTable.SemanticType.IntType){
@@ -507,6 +533,12 @@ public class ThreeAddressVisitor implements ASTNodes.IVisitorP{
     }
 
     public void visitArrayAccess(ASTNodes.ArrayAccessNode node) throws Exception{
+        Integer sharedTemp = sharedTemps.get(node);
+        if(sharedTemp != null){
+            pushResult(sharedTemp);
+            return;
+        }
+
         node.array.visitP(this);
         var arrayBase = popResult();
 
@@ -515,6 +547,7 @@ public class ThreeAddressVisitor implements ASTNodes.IVisitorP{
 
         var result = newTemp();
         code.add(ThreeAddressCode.createBinary(ThreeAddressCode.Commands.ARRLOAD, arrayBase, index, result));
+        sharedTemps.put(node, result);
         pushResult(result);
     }
 
@@ -540,7 +573,8 @@ public class ThreeAddressVisitor implements ASTNodes.IVisitorP{
     }
 
     public void visitArrayDeclaration(ASTNodes.ArrayDeclarationNode node) throws Exception{
-        var arrayBase = getVariableAddress(node.id.name);
+        sharedTemps.clear();
+        var arrayBase = getVariableAddress(node.id);
         if(node.size != null){
             node.size.visitP(this);
             var size = popResult();
@@ -561,6 +595,7 @@ public class ThreeAddressVisitor implements ASTNodes.IVisitorP{
     }
 
     public void visitArrayAssign(ASTNodes.ArrayAssignNode node) throws Exception{
+        sharedTemps.clear();
         node.array.visitP(this);
         var arrayBase = popResult();
 
@@ -578,6 +613,7 @@ public class ThreeAddressVisitor implements ASTNodes.IVisitorP{
     }
 
     public void visitIf(ASTNodes.IfNode node) throws  Exception{
+        sharedTemps.clear();
         node.cond.visitP(this);
         int condResult = popResult();
         var elseLabel = newLabel();
@@ -600,6 +636,7 @@ public class ThreeAddressVisitor implements ASTNodes.IVisitorP{
 
         code.add(ThreeAddressCode.create(ThreeAddressCode.Commands.LABEL, startLabel));
 
+        sharedTemps.clear();
         node.cond.visitP(this);
         int condResult = popResult();
 
@@ -614,21 +651,25 @@ public class ThreeAddressVisitor implements ASTNodes.IVisitorP{
         var startLabel = newLabel();
         var endLabel = newLabel();
 
+        // Оператор может оставить на стеке результат (присваивание), а может и нет (пустой список,
+        // if, print) - после операторов возвращаем стек к прежнему размеру, а не снимаем по одному
+        int results = resultStack.size();
         node.start.visitP(this);
-        popResult();
+        resultStack.setSize(results);
 
         code.add(ThreeAddressCode.create(ThreeAddressCode.Commands.LABEL, startLabel));
 
+        sharedTemps.clear();
         node.condition.visitP(this);
         int condResult = popResult();
 
         code.add(ThreeAddressCode.create(ThreeAddressCode.Commands.IFN, condResult, endLabel));
 
         node.body.visitP(this);
-        popResult();
+        resultStack.setSize(results);
 
         node.increment.visitP(this);
-        popResult();
+        resultStack.setSize(results);
 
         code.add(ThreeAddressCode.create(ThreeAddressCode.Commands.GOTO, startLabel));
 
@@ -636,6 +677,7 @@ public class ThreeAddressVisitor implements ASTNodes.IVisitorP{
     }
 
     public void visitProcCall(ASTNodes.ProcCallNode node) throws  Exception{
+        sharedTemps.clear();
         for(int i = node.pars.lst.size() - 1; i >= 0; i--){
             var curr = node.pars.lst.get(i);
             curr.visitP(this);
@@ -651,15 +693,26 @@ public class ThreeAddressVisitor implements ASTNodes.IVisitorP{
     }
 
     public void visitFuncCall(ASTNodes.FuncCallNode node) throws  Exception{
+        var params = node.name.symbol != null ? node.name.symbol.params : null;
         for(int i = node.pars.lst.size() - 1; i >= 0; i--){
             var curr = node.pars.lst.get(i);
             curr.visitP(this);
             int currTemp = popResult();
+            // Аргумент int для параметра double (sqrt(4)) передается уже преобразованным
+            if(params != null && i < params.length && params[i] == SymbolTable.SemanticType.DoubleType
+                    && CalcTypes.calcType(curr, context) == SymbolTable.SemanticType.IntType){
+                int convert = newTemp();
+                code.add(ThreeAddressCode.createConvert(ThreeAddressCode.Commands.CONITR, currTemp, convert));
+                currTemp = convert;
+            }
             code.add(ThreeAddressCode.create(ThreeAddressCode.Commands.PUSH, currTemp));
         }
 
         int resultTemp = newTemp();
-        code.add(ThreeAddressCode.create(ThreeAddressCode.Commands.CALL, resultTemp, node.name.name));
+        var call = ThreeAddressCode.create(ThreeAddressCode.Commands.CALL, resultTemp, node.name.name);
+        if (node.name.symbol != null && node.name.symbol == CompilationContext.standard(node.name.symbol.name))
+            call.function = node.name.symbol;
+        code.add(call);
 
         for (int i = 0; i < node.pars.lst.size(); i++) {
             code.add(ThreeAddressCode.create(ThreeAddressCode.Commands.POP));
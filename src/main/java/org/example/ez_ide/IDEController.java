@@ -1,11 +1,18 @@
 package org.example.ez_ide;
 
+import Basic.ASTCache;
+import Basic.CommonSubexpressions;
+import Basic.ConstantFolding;
+import Basic.DeadCodeElimination;
+import Basic.IncrementalParser;
 import Basic.LexerUnit;
+import Basic.LineIndex;
 import Basic.Parser;
 import ExceptionLogic.CompilerException;
 import Interpret.ConvertASTToInterpretTreeVisitor;
 import Interpret.InterpretTree;
 import PrettyPrinters.PrettyPrinterSecond;
+import SemanticCheckLogic.CompilationContext;
 import SemanticCheckLogic.SemanticCheck;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
@@ -20,6 +27,7 @@ import javafx.stage.Stage;
 import java.io.*;
 import java.net.URL;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Map;
@@ -58,6 +66,9 @@ public class IDEController implements Initializable {
 
     private ExecutorService backgroundExecutor;
     private CompletableFuture<Void> currentCompilationTask;
+    private IncrementalParser incrementalParser;//Дерево прошлой компиляции: заново разбираются только измененные операторы
+    // Деревья запущенных программ: повторный запуск того же текста обходится без лексера и парсера
+    private final ASTCache astCache = new ASTCache(Path.of(System.getProperty("java.io.tmpdir"), "ez_ide", "ast"));
 
     private File currentFile;
     private boolean isModified = false;
@@ -221,14 +232,13 @@ public class IDEController implements Initializable {
                compileButton.setDisable(true);
            });
 
+           String codeText =  codeEditor.getText();
            try{
-               String codeText =  codeEditor.getText();
                var startTime = System.currentTimeMillis();
-               var lexer = new LexerUnit.Lexer(codeText);
-               var parser = new Parser(lexer);
-               var program = parser.mainProgram();
-               program.visitP(new SemanticCheck());
-               var rooti = (InterpretTree.StatementNodeI) program.visit(new ConvertASTToInterpretTreeVisitor());
+               var program = parse(codeText);
+               var context = new CompilationContext();
+               new SemanticCheck(context).check(program);
+               var rooti = (InterpretTree.StatementNodeI) program.visit(new ConvertASTToInterpretTreeVisitor(context));
                var endTime = System.currentTimeMillis();
                var elapsedTime = endTime - startTime;
                CompilationResult result = new CompilationResult(true, "Компиляция прошла успешно", elapsedTime);
@@ -243,9 +253,12 @@ public class IDEController implements Initializable {
                compilationCompleteListeners.forEach(listener -> listener.accept(result));
            } catch (Exception e) {
                CompilationResult result = new CompilationResult(false, e.getMessage(), 0);
+               // Синтаксические и лексические ошибки выводим все сразу, а не по одной за компиляцию
+               String errors = e instanceof CompilerException.SyntaxException || e instanceof CompilerException.LexerException
+                       ? syntaxErrors(codeText, e) : "✗ Ошибка компиляции: " + e.getMessage() + "\n";
                // Выводим результаты в консоль и делаем кнопку компиляции активной вновь
                Platform.runLater(() -> {
-                   consoleOutput.appendText("✗ Ошибка компиляции: " + e.getMessage() + "\n");
+                   consoleOutput.appendText(errors);
                    statusLabel.setText("Ошибка компиляции");
                    compileButton.setDisable(false);
                });
@@ -254,6 +267,29 @@ public class IDEController implements Initializable {
        },  backgroundExecutor);
     }
 
+    /// Все синтаксические ошибки кода: один разбор в режиме восстановления
+    private String syntaxErrors(String codeText, Exception first) {
+        var sb = new StringBuilder();
+        try {
+            var parser = new Parser(new LexerUnit.Lexer(codeText), true);
+            parser.mainProgram();
+            for (var error : parser.diagnostics)
+                sb.append("✗ Ошибка компиляции ").append(error.position).append(": ").append(error.getMessage()).append("\n");
+        } catch (Exception e) {
+            // Например, незакрытая строка: остается первая ошибка
+        }
+        return sb.isEmpty() ? "✗ Ошибка компиляции: " + first.getMessage() + "\n" : sb.toString();
+    }
+
+    /// Разобрать код, переиспользуя дерево прошлой компиляции
+    private Basic.ASTNodes.StatementNode parse(String codeText) throws Exception {
+        if (incrementalParser == null) {
+            incrementalParser = new IncrementalParser(codeText);
+            return incrementalParser.program();
+        }
+        return incrementalParser.update(codeText);
+    }
+
     @FXML
     private void handleRun() {
         consoleOutput.appendText("=== ВЫПОЛНЕНИЕ ===\n");
@@ -270,21 +306,34 @@ public class IDEController implements Initializable {
             }
             ConsoleCapture consoleCapture = new ConsoleCapture();
             consoleCapture.startCapture();
-            LexerUnit.Lexer lex = new LexerUnit.Lexer(code);
 
             try {
-                Parser par = new Parser(lex);
-                Basic.ASTNodes.StatementNode progr = par.mainProgram();
+                var parseStart = System.currentTimeMillis();
+                // Из кэша приходит новое дерево: оптимизации ниже меняют его, не трогая кэш
+                Basic.ASTNodes.StatementNode progr = astCache.parse(code);
+                var parseEnd = System.currentTimeMillis();
 
                 var semanticStart = System.currentTimeMillis();
-                progr.visitP(new SemanticCheck());
+                var context = new CompilationContext();
+                new SemanticCheck(context).check(progr);
                 var semanticEnd = System.currentTimeMillis();
 
                 var convertStart = System.currentTimeMillis();
-                InterpretTree.StatementNodeI rooti = (InterpretTree.StatementNodeI) progr.visit(new ConvertASTToInterpretTreeVisitor());
+                // Оптимизации AST. Все они идут после семантической проверки (нужны IdNode.symbol и типы
+                // выражений) и меняют дерево: заменяют и удаляют узлы, а общий узел стоит в нескольких местах
+                // с одной позицией. Поэтому их можно делать только здесь, над деревом, которое разобрано
+                // заново и дальше только исполняется, а не над деревом IncrementalParser из parse().
+                // Свертка идет первой: постоянные условия для удаления мертвого кода дает она
+                new ConstantFolding().fold(progr);
+                progr = new DeadCodeElimination().eliminate(progr);
+                var subexpressions = new CommonSubexpressions();
+                subexpressions.share(progr);
+                InterpretTree.StatementNodeI rooti = (InterpretTree.StatementNodeI) progr.visit(
+                        new ConvertASTToInterpretTreeVisitor(context, subexpressions.merged > 0));
                 var convertEnd = System.currentTimeMillis();
 
                 var executeStart = System.currentTimeMillis();
+                context.initializeMemory();//Переменные этой программы в Memory с нуля
                 rooti.execute();
                 var executeEnd = System.currentTimeMillis();
 
@@ -297,6 +346,7 @@ public class IDEController implements Initializable {
                 }
 
                 consoleOutput.appendText("\n--- ИНФОРМАЦИЯ О ВЫПОЛНЕНИИ ---\n");
+                consoleOutput.appendText("✓ Разбор: " + (parseEnd - parseStart) + "ms\n");
                 consoleOutput.appendText("✓ Семантический анализ: " + (semanticEnd - semanticStart) + "ms\n");
                 consoleOutput.appendText("✓ Конвертация AST: " + (convertEnd - convertStart) + "ms\n");
                 consoleOutput.appendText("✓ Выполнение: " + (executeEnd - executeStart) + "ms\n");
@@ -355,17 +405,23 @@ public class IDEController implements Initializable {
         statusLabel.setText("Код отформатирован");
     }
 
+    // Таблица строк для текущего текста редактора, пересобирается только при его изменении
+    private String lineIndexText;
+    private LineIndex lineIndex;
+
     @FXML
     private void updateLineInfo() {
         String text = codeEditor.getText();
         int caretPosition = codeEditor.getCaretPosition();
 
-        // Вычисляем строку и колонку
-        String textBeforeCaret = text.substring(0, caretPosition);
-        int line = textBeforeCaret.split("\n", -1).length;
-        int column = caretPosition - textBeforeCaret.lastIndexOf('\n');
+        if (lineIndex == null || lineIndexText != text) {
+            lineIndex = new LineIndex(text);
+            lineIndexText = text;
+        }
 
-        lineInfoLabel.setText(String.format("Строка: %d, Колонка: %d", line, column));
+        // Вычисляем строку и колонку
+        var position = lineIndex.positionOf(caretPosition);
+        lineInfoLabel.setText(String.format("Строка: %d, Колонка: %d", position.line, position.column));
     }
 
     @FXML
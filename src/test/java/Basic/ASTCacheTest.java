@@ -0,0 +1,222 @@
+package Basic;
+
+import Benchmarks.Programs;
+import SemanticCheckLogic.CompilationContext;
+import SemanticCheckLogic.SemanticCheck;
+import org.junit.jupiter.api.Test;
+
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ASTCacheTest {
+    // Все виды узлов арены
+    private static final String PROGRAM = """
+            x = 10;
+            y = 2.5 * (x - 3);
+            b = 12345678901234bi;
+            b += 5;
+            arr = [1, 2, 3];
+            arr[1] = arr[0] + 1;
+            arr[2] *= 2;
+            if x > 5 then print(x) else { print(y); x = 1 };
+            while x < 20 do x += 3;
+            for (i = 0; i < 3; i = i + 1) do print(i * 2);
+            z = sqrt(y)""";
+
+    /// Все поля узлов дерева, включая позиции и IdNode.ind
+    private static String dump(Object node) throws Exception {
+        var sb = new StringBuilder();
+        dump(node, sb);
+        return sb.toString();
+    }
+
+    private static void dump(Object node, StringBuilder sb) throws Exception {
+        if (node == null || node instanceof String || node instanceof Number || node instanceof Character
+                || node instanceof Enum || node instanceof Position) {
+            sb.append(node);
+            return;
+        }
+        if (node instanceof List<?> list) {
+            sb.append('[');
+            for (var item : list)
+                dump(item, sb.append(' '));
+            sb.append(']');
+            return;
+        }
+        sb.append(node.getClass().getSimpleName()).append('{');
+        for (Class<?> c = node.getClass(); c != Object.class; c = c.getSuperclass())
+            for (Field field : c.getDeclaredFields())
+                if (!Modifier.isStatic(field.getModifiers()))
+                    dump(field.get(node), sb.append(' ').append(field.getName()).append('='));
+        sb.append('}');
+    }
+
+    /// Виды узлов в порядке обхода без рекурсии: для деревьев, которые dump обойти не может
+    private static String kinds(ASTNodes.Node root) throws Exception {
+        var sb = new StringBuilder();
+        new ASTWalker() {
+            @Override
+            protected boolean enter(ASTNodes.Node node) {
+                sb.append(node.kind).append(' ');
+                return true;
+            }
+        }.walk(root);
+        return sb.toString();
+    }
+
+    private static Path temporaryDirectory() throws Exception {
+        return Files.createTempDirectory("ezast");
+    }
+
+    private static void delete(Path directory) throws Exception {
+        try (var files = Files.walk(directory)) {
+            for (var file : files.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(file);
+        }
+    }
+
+    @Test
+    void arenaRebuildsTheSameTree() throws Exception {
+        var lexer = new LexerUnit.Lexer(PROGRAM);
+        var tree = new Parser(lexer).mainProgram();
+        var arena = ASTArena.of(tree, lexer.lineIndex());
+
+        assertEquals(dump(tree), dump(arena.tree()));
+    }
+
+    @Test
+    void buildsDeeplyNestedTreesWithoutRecursion() throws Exception {
+        for (var kind : new String[]{"block", "if", "while", "for", "paren", "call", "index", "array"}) {
+            var code = Programs.nested(kind, 50_000);
+            var lexer = new LexerUnit.Lexer(code);
+            var tree = new Parser(lexer).mainProgram();
+            var arena = ASTArena.of(tree, lexer.lineIndex());
+            assertEquals(kinds(tree), kinds(arena.tree()), kind);
+        }
+    }
+
+    @Test
+    void cachesDeeplyNestedPrograms() throws Exception {
+        var directory = temporaryDirectory();
+        try {
+            var cache = new ASTCache(directory);
+            var code = Programs.nested("block", 20_000);
+            cache.parse(code);
+            assertTrue(Files.isRegularFile(cache.pathOf(code)));
+            assertNotNull(cache.load(code));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void loadsWhatWasParsed() throws Exception {
+        var directory = temporaryDirectory();
+        try {
+            var cache = new ASTCache(directory);
+            var parsed = cache.parse(PROGRAM);
+            assertTrue(Files.isRegularFile(cache.pathOf(PROGRAM)));
+
+            var loaded = cache.load(PROGRAM);
+            assertNotNull(loaded);
+            assertEquals(dump(new Parser(new LexerUnit.Lexer(PROGRAM)).mainProgram()), dump(loaded));
+            assertNotSame(parsed, cache.parse(PROGRAM));//Каждая загрузка дает свое дерево
+            assertNull(cache.load(PROGRAM + ";"));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void doesNotKeepSlotsOfCheckedTree() throws Exception {
+        var directory = temporaryDirectory();
+        try {
+            var code = "a = 1; b = 2; c = a + b";
+            var lexer = new LexerUnit.Lexer(code);
+            var tree = new Parser(lexer).mainProgram();
+            new SemanticCheck(new CompilationContext()).check(tree);
+            var cache = new ASTCache(directory);
+            cache.store(code, tree, lexer.lineIndex());
+
+            // Слоты раздает CompilationContext: из кэша приходит дерево, как из парсера
+            var loaded = cache.load(code);
+            assertEquals(dump(new Parser(new LexerUnit.Lexer(code)).mainProgram()), dump(loaded));
+            new SemanticCheck(new CompilationContext()).check(loaded);
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void rejectsSizesLargerThanFile() throws Exception {
+        var directory = temporaryDirectory();
+        try {
+            var cache = new ASTCache(directory);
+            cache.parse(PROGRAM);
+            // size, listSize, stringCount: массивы под них не должны выделяться
+            for (int field = 2; field <= 4; field++) {
+                cache.parse(PROGRAM);
+                try (var file = new RandomAccessFile(cache.pathOf(PROGRAM).toFile(), "rw")) {
+                    file.seek((long) field * Integer.BYTES);
+                    file.writeInt(Integer.MAX_VALUE / 2);
+                }
+                assertNull(cache.load(PROGRAM), "поле " + field);
+                Files.delete(cache.pathOf(PROGRAM));
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedFiles() throws Exception {
+        var directory = temporaryDirectory();
+        try {
+            var first = new ASTCache(directory);
+            first.parse(PROGRAM);
+            long size = Files.size(first.pathOf(PROGRAM));
+            var cache = new ASTCache(directory, 3 * size + 1024);//Три файла, но не четыре
+            var programs = new String[]{PROGRAM, PROGRAM + ";\nq = 1", PROGRAM + ";\nq = 2", PROGRAM + ";\nq = 3"};
+            for (int i = 1; i < 3; i++) {
+                cache.parse(programs[i]);
+                Files.setLastModifiedTime(cache.pathOf(programs[i]), FileTime.fromMillis(1000L * i));
+            }
+            Files.setLastModifiedTime(cache.pathOf(PROGRAM), FileTime.fromMillis(500));
+            cache.load(PROGRAM);//Загрузка делает файл самым свежим
+
+            cache.parse(programs[3]);
+            assertNotNull(cache.load(PROGRAM));
+            assertFalse(Files.exists(cache.pathOf(programs[1])));
+            assertTrue(Files.exists(cache.pathOf(programs[2])));
+            assertTrue(Files.exists(cache.pathOf(programs[3])));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void treatsOtherVersionAsMiss() throws Exception {
+        var directory = temporaryDirectory();
+        try {
+            var cache = new ASTCache(directory);
+            cache.parse(PROGRAM);
+            try (var file = new RandomAccessFile(cache.pathOf(PROGRAM).toFile(), "rw")) {
+                file.seek(Integer.BYTES);
+                file.writeInt(ASTCache.VERSION - 1);
+            }
+            assertNull(cache.load(PROGRAM));
+            assertNotNull(cache.parse(PROGRAM));//Разбор заново перезаписывает файл
+            assertNotNull(cache.load(PROGRAM));
+        } finally {
+            delete(directory);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package Basic;
+
+import SemanticCheckLogic.CompilationContext;
+import SemanticCheckLogic.SemanticCheck;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConstantFoldingTest {
+    private static ASTNodes.StatementListNode checked(String code) throws Exception {
+        var program = new Parser(new LexerUnit.Lexer(code)).mainProgram();
+        new SemanticCheck(new CompilationContext()).check(program);
+        return (ASTNodes.StatementListNode) program;
+    }
+
+    private static ASTNodes.ExprNode assigned(ASTNodes.StatementListNode program, int index) {
+        return ((ASTNodes.AssignNode) program.statements.get(index)).expr;
+    }
+
+    /// Вывод интерпретатора для программы, со сверткой констант или без
+    private static String run(String code, boolean fold) throws Exception {
+        return Pipeline.output(code, program -> {
+            if (fold)
+                new ConstantFolding().fold(program);
+            return program;
+        });
+    }
+
+    @Test
+    void foldsLiteralsAndPropagatesAssignedValues() throws Exception {
+        var program = checked("x = 2 * 3 + 1; y = x / 2; z = sqrt(16); b = 10bi * 10bi");
+        var folding = new ConstantFolding();
+        folding.fold(program);
+
+        assertEquals(7, ((ASTNodes.IntNode) assigned(program, 0)).value);
+        assertEquals(3.5, ((ASTNodes.DoubleNode) assigned(program, 1)).value);//Деление всегда дает double
+        assertEquals(4.0, ((ASTNodes.DoubleNode) assigned(program, 2)).value);
+        assertEquals("100", ((ASTNodes.BigIntNode) assigned(program, 3)).value);
+        assertEquals(1, folding.propagated);
+    }
+
+    @Test
+    void forgetsValuesAssignedInLoops() throws Exception {
+        var program = checked("i = 0; s = 1; while i < 3 do { i += 1; s = s * 2 }; t = s + 1");
+        new ConstantFolding().fold(program);
+        assertEquals(ASTNodes.BIN_OP, assigned(program, 3).kind);
+    }
+
+    @Test
+    void keepsInterpreterOutput() throws Exception {
+        String[] programs = {
+                "x = 5; y = x * 2 - 3; print(y); d = 1.5; print(d + x / 2)",
+                "a = 1; for (i = 0; i < 4; i = i + 1) do a = a * 3; print(a)",
+                "b = 7bi; c = b + 5bi * 2bi; print(c); print(sqrt(9) + 1)",
+                "n = 2147483647; m = n + 1; print(m)",
+                "x = 3; if x < 2 then x = 10 else x = x + 1; print(x)",
+        };
+        for (var code : programs)
+            assertEquals(run(code, false), run(code, true), code);
+    }
+}
@@ -0,0 +1,64 @@
+package Basic;
+
+import SemanticCheckLogic.CompilationContext;
+import SemanticCheckLogic.SemanticCheck;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeadCodeEliminationTest {
+    private static ASTNodes.StatementListNode optimized(String code, DeadCodeElimination elimination) throws Exception {
+        var program = new Parser(new LexerUnit.Lexer(code)).mainProgram();
+        new SemanticCheck(new CompilationContext()).check(program);
+        new ConstantFolding().fold(program);
+        return (ASTNodes.StatementListNode) elimination.eliminate(program);
+    }
+
+    /// Вывод интерпретатора после свертки констант, с удалением мертвого кода или без
+    private static String run(String code, boolean eliminate) throws Exception {
+        return Pipeline.output(code, program -> {
+            new ConstantFolding().fold(program);
+            return eliminate ? new DeadCodeElimination().eliminate(program) : program;
+        });
+    }
+
+    @Test
+    void collapsesConstantBranches() throws Exception {
+        var elimination = new DeadCodeElimination();
+        var program = optimized("x = 1; if 1 > 2 then print(0) else print(x); while 3 < 1 do print(2); if 2 - 1 == 1 then print(3)", elimination);
+
+        // x = 1 тоже удалено: после свертки print(x) читает литерал
+        assertEquals(2, program.statements.size());
+        assertEquals(ASTNodes.PROC_CALL, program.statements.get(0).kind);//else-ветка вместо if
+        assertEquals(ASTNodes.PROC_CALL, program.statements.get(1).kind);
+        assertEquals(3, elimination.branches);
+    }
+
+    @Test
+    void removesAssignmentsThatAreNeverRead() throws Exception {
+        var elimination = new DeadCodeElimination();
+        var program = optimized("s = 0; for (i = 0; i < 2; i = i + 1) do s = s + i; a = s; t = a * 3; a = a + 1; print(a); t = 5", elimination);
+
+        assertEquals(2, elimination.removed);//Оба присваивания t
+        assertEquals(5, program.statements.size());
+    }
+
+    @Test
+    void keepsVariablesReadInLoops() throws Exception {
+        var elimination = new DeadCodeElimination();
+        optimized("s = 0; for (i = 0; i < 3; i = i + 1) do { print(s); s = s + i }", elimination);
+        assertEquals(0, elimination.removed);
+    }
+
+    @Test
+    void keepsInterpreterOutput() throws Exception {
+        String[] programs = {
+                "x = 5; y = x * 2; if 1 < 2 then print(y) else print(x)",
+                "t = 0; s = 0; for (i = 0; i < 5; i = i + 1) do { t = i * 2; s = s + i }; print(s)",
+                "a = 1; while 2 < 1 do a = 2; b = a + 1; if a < b then print(b)",
+                "b = 7bi; c = b * 2bi; b = 1bi; print(b)",
+        };
+        for (var code : programs)
+            assertEquals(run(code, false), run(code, true), code);
+    }
+}
@@ -0,0 +1,40 @@
+package Basic;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyWordTest {
+    @Test
+    void recognizesEveryKeyWord() throws Exception {
+        for (var keys = LexerUnit.KeyWords.keys(); keys.hasMoreElements(); ) {
+            var word = keys.nextElement();
+            var lexer = new LexerUnit.Lexer(word);
+            lexer.analize();
+            assertEquals(LexerUnit.KeyWords.get(word), lexer.tokens().type(0), word);
+        }
+    }
+
+    @Test
+    void keepsLookalikesAsNames() throws Exception {
+        // Те же длина и первая буква, что у ключевых слов, или ключевое слово как префикс
+        for (var word : new String[]{"iff", "ix", "dx", "done", "fork", "thin", "whale", "elsa", "If", "fo", "форма"}) {
+            var lexer = new LexerUnit.Lexer(word);
+            lexer.analize();
+            assertEquals(LexerUnit.TokenType.ID, lexer.tokens().type(0), word);
+            assertEquals(word, lexer.tokens().text(0));
+        }
+    }
+
+    @Test
+    void internsEachNameOnce() throws Exception {
+        var lexer = new LexerUnit.Lexer("alpha = beta + alpha * beta1");
+        lexer.analize();
+        var tokens = lexer.tokens();
+
+        assertEquals(3, lexer.names.size());
+        assertEquals(tokens.payload(0), tokens.payload(4));
+        assertSame(tokens.text(0), tokens.text(4));
+        assertSame("alpha", tokens.text(0));
+    }
+}
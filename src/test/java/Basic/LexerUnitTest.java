@@ -0,0 +1,74 @@
+package Basic;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LexerUnitTest {
+    /// Типы токенов кода без EOF
+    private static LexerUnit.TokenType[] types(String code) throws Exception {
+        var lexer = new LexerUnit.Lexer(code);
+        lexer.analize();
+        var tokens = lexer.tokens();
+        var types = new LexerUnit.TokenType[tokens.size() - 1];
+        for (int i = 0; i < types.length; i++)
+            types[i] = tokens.type(i);
+        return types;
+    }
+
+    @Test
+    void classifiesLatinAndCyrillicLetters() {
+        for (char c : "azAZ_яАЯёЁ".toCharArray()) {
+            assertTrue(LexerUnit.isAlpha(c), String.valueOf(c));
+            assertTrue(LexerUnit.isAlphaNumeric(c), String.valueOf(c));
+        }
+        for (char c : "0123456789".toCharArray()) {
+            assertTrue(LexerUnit.isDigit(c));
+            assertFalse(LexerUnit.isAlpha(c));
+        }
+        // Буквы вне ASCII и основного блока кириллицы в именах не допускаются
+        for (char c : " +;\"$ßλ".toCharArray())
+            assertFalse(LexerUnit.isAlpha(c), String.valueOf(c));
+        assertTrue(LexerUnit.isDigit('٣'));//Цифры остального Unicode - через Character.isDigit
+    }
+
+    @Test
+    void lexesCyrillicNames() throws Exception {
+        assertArrayEquals(new LexerUnit.TokenType[]{LexerUnit.TokenType.ID, LexerUnit.TokenType.ASSIGN,
+                LexerUnit.TokenType.ID, LexerUnit.TokenType.PLUS, LexerUnit.TokenType.ID}, types("переменная_1 = ёж2 + x"));
+
+        var lexer = new LexerUnit.Lexer("переменная_1 = ёж2 + x");
+        lexer.analize();
+        var tokens = lexer.tokens();
+        assertEquals("переменная_1", tokens.text(0));
+        assertEquals("ёж2", tokens.text(2));
+        assertEquals(1, tokens.position(2).line);
+        assertEquals(16, tokens.position(2).column);
+    }
+
+    @Test
+    void skipsIndentationInRuns() throws Exception {
+        var code = "x = 1;\n" + " ".repeat(37) + "y = 2;\r\n" + " ".repeat(16) + "// c\n   z\n" + " ".repeat(20);
+        var file = Files.createTempFile("indent", ".ez");
+        try {
+            Files.writeString(file, code);
+            // Строка и отображенный файл пропускают отступы разными путями
+            for (var text : new CharSequence[]{code, SourceText.map(file)}) {
+                var lexer = new LexerUnit.Lexer(text);
+                lexer.analize();
+                var tokens = lexer.tokens();
+                assertEquals("y", tokens.text(4));
+                assertEquals(2, tokens.position(4).line);
+                assertEquals(38, tokens.position(4).column);
+                assertEquals("z", tokens.text(8));
+                assertEquals(4, tokens.position(8).line);
+                assertEquals(4, tokens.position(8).column);
+                assertEquals(LexerUnit.TokenType.EOF, tokens.type(9));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package Basic;
+
+import Benchmarks.Programs;
+import ExceptionLogic.CompilerException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NestingTest {
+    /// Наибольшее число вложенных узлов вида kind на пути от корня
+    private static int depth(ASTNodes.Node root, byte kind) throws Exception {
+        var walker = new ASTWalker() {
+            int current, max;
+
+            @Override
+            protected boolean enter(ASTNodes.Node node) {
+                if (node.kind == kind)
+                    max = Math.max(max, ++current);
+                return true;
+            }
+
+            @Override
+            protected void leave(ASTNodes.Node node) {
+                if (node.kind == kind)
+                    current--;
+            }
+        };
+        walker.walk(root);
+        return walker.max;
+    }
+
+    @Test
+    void parsesDeepNestingWithoutRecursion() throws Exception {
+        int depth = 50_000;
+        assertEquals(depth, depth(new Parser(new LexerUnit.Lexer(Programs.nested("if", depth))).mainProgram(), ASTNodes.IF));
+        assertEquals(depth, depth(new Parser(new LexerUnit.Lexer(Programs.nested("while", depth))).mainProgram(), ASTNodes.WHILE));
+        assertEquals(depth, depth(new Parser(new LexerUnit.Lexer(Programs.nested("for", depth))).mainProgram(), ASTNodes.FOR));
+        // Каждый блок - StatementList, и вся программа - тоже
+        assertEquals(depth + 1, depth(new Parser(new LexerUnit.Lexer(Programs.nested("block", depth))).mainProgram(), ASTNodes.STATEMENT_LIST));
+        // Скобки узлов не дают: проверяется, что разбор дошел до конца без ошибки
+        assertNotNull(new Parser(new LexerUnit.Lexer(Programs.nested("paren", depth))).mainProgram());
+        assertEquals(depth, depth(new Parser(new LexerUnit.Lexer(Programs.nested("call", depth))).mainProgram(), ASTNodes.FUNC_CALL));
+        assertEquals(depth, depth(new Parser(new LexerUnit.Lexer(Programs.nested("index", depth))).mainProgram(), ASTNodes.ARRAY_ACCESS));
+        assertEquals(depth, depth(new Parser(new LexerUnit.Lexer(Programs.nested("array", depth))).mainProgram(), ASTNodes.ARRAY_LITERAL));
+    }
+
+    @Test
+    void parsesArgumentsAndElementsInsideNesting() throws Exception {
+        var tree = new Parser(new LexerUnit.Lexer("x = f(a[i + 1], [1, [2, 3], []], g(b) * 2)")).mainProgram();
+        assertEquals("[(((([(a[(PLUS,(i),(1))]),([1, [2, 3], []]),((MULTIPLE,((([(b)]),(g))),(2)))]),(f))),(x))]",
+                tree.toString());
+    }
+
+    @Test
+    void reportsNestingDeeperThanLimit() throws Exception {
+        for (var kind : new String[]{"block", "if", "while", "for", "paren", "call", "index", "array"}) {
+            int levels = kind.matches("paren|call|index|array") ? 99 : 100;//Само выражение - тоже уровень
+            var parser = new Parser(new LexerUnit.Lexer(Programs.nested(kind, levels)));
+            parser.maxNesting = 100;
+            assertNotNull(parser.mainProgram(), kind);
+
+            var deeper = new Parser(new LexerUnit.Lexer(Programs.nested(kind, levels + 1)));
+            deeper.maxNesting = 100;
+            var error = assertThrows(CompilerException.SyntaxException.class, deeper::mainProgram, kind);
+            assertEquals("Вложенность глубже 100 уровней", error.getMessage(), kind);
+        }
+    }
+
+    @Test
+    void collectsNestingErrorInRecoveryMode() throws Exception {
+        var parser = new Parser(new LexerUnit.Lexer(Programs.nested("while", 101) + ";\nz = 2"), true);
+        parser.maxNesting = 100;
+        parser.mainProgram();
+
+        assertEquals(1, parser.diagnostics.size());
+        assertEquals("Вложенность глубже 100 уровней", parser.diagnostics.get(0).getMessage());
+    }
+}
@@ -0,0 +1,67 @@
+package Basic;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelLexerTest {
+    // Куски не короче 2^18 символов: текст нужен на несколько кусков
+    private static final int LENGTH = 3 << 20;
+
+    private static void assertSameTokens(String code, int threads) throws Exception {
+        var sequential = new LexerUnit.Lexer(code);
+        sequential.analize();
+        var parallel = new LexerUnit.Lexer(code);
+        var pool = new ForkJoinPool(threads);
+        try {
+            parallel.analizeParallel(pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        var expected = sequential.tokens();
+        var actual = parallel.tokens();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.type(i), actual.type(i), "токен " + i);
+            assertEquals(expected.start(i), actual.start(i), "токен " + i);
+            assertEquals(expected.length(i), actual.length(i), "токен " + i);
+            assertEquals(expected.payload(i), actual.payload(i), "токен " + i);//Номера имен тоже совпадают
+        }
+        var last = expected.size() - 1;
+        assertEquals(expected.position(last).line, actual.position(last).line);
+        assertEquals(expected.position(last).column, actual.position(last).column);
+    }
+
+    @Test
+    void matchesSequentialLexer() throws Exception {
+        var sb = new StringBuilder();
+        for (int i = 0; sb.length() < LENGTH; i++)
+            sb.append("x").append(i % 977).append(" = y").append(i % 13).append(" * 2.5 + 12345678901234bi; // ").append(i).append('\n');
+        assertSameTokens(sb.toString(), 8);
+    }
+
+    @Test
+    void resyncsInsideStringsAndComments() throws Exception {
+        // Строки через много строк текста и комментарии с кавычками: граница куска попадает внутрь них,
+        // и кусок, начатый с перевода строки внутри строкового литерала, разбирается не с того места
+        var sb = new StringBuilder();
+        for (int i = 0; sb.length() < LENGTH; i++) {
+            sb.append("s = \"");
+            for (int line = 0; line < i % 40; line++)
+                sb.append("a = b; // \" не конец\n");
+            sb.append("\";\n// комментарий с \" кавычкой\nимя").append(i % 101).append(" = ").append(i).append(";\n");
+            if (i % 5000 == 0) {
+                sb.append("t = \"");//Строка длиннее целого куска
+                for (int line = 0; line < 20_000; line++)
+                    sb.append("x = 1;\n");
+                sb.append("\";\n");
+            }
+        }
+        var code = sb.append("z = 1").toString();
+        for (int threads : new int[]{2, 3, 8})
+            assertSameTokens(code, threads);
+    }
+}
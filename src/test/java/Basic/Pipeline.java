@@ -0,0 +1,40 @@
+package Basic;
+
+import Interpret.ConvertASTToInterpretTreeVisitor;
+import Interpret.InterpretTree;
+import SemanticCheckLogic.CompilationContext;
+import SemanticCheckLogic.SemanticCheck;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/// Конвейер для тестов оптимизаций: разбор, семантическая проверка, проход над деревом,
+/// перевод в дерево интерпретатора и выполнение с перехватом System.out
+final class Pipeline {
+    /// Оптимизация проверенного дерева; возвращает дерево, которое пойдет дальше
+    interface Pass {
+        ASTNodes.StatementNode apply(ASTNodes.StatementNode program) throws Exception;
+    }
+
+    private Pipeline() { }
+
+    /// Вывод интерпретатора для программы code после прохода pass
+    static String output(String code, Pass pass) throws Exception {
+        var program = new Parser(new LexerUnit.Lexer(code)).mainProgram();
+        var context = new CompilationContext();
+        new SemanticCheck(context).check(program);
+        program = pass.apply(program);
+        var root = (InterpretTree.StatementNodeI) program.visit(new ConvertASTToInterpretTreeVisitor(context));
+        var out = new ByteArrayOutputStream();
+        var old = System.out;
+        System.setOut(new PrintStream(out, true, StandardCharsets.UTF_8));
+        try {
+            context.initializeMemory();
+            root.execute();
+        } finally {
+            System.setOut(old);
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,39 @@
+package Benchmarks;
+
+import Basic.ASTCache;
+import Basic.LexerUnit;
+import Basic.Parser;
+
+import java.nio.file.Files;
+
+/// Разбор программы заново против загрузки того же дерева из ASTCache.
+/// Запуск после mvn test-compile:
+///   java -Xss512m -Xms2g -Xmx2g -cp target/classes:target/test-classes Benchmarks.ASTCacheBenchmark [строк] [прогонов]
+/// Дерево в 200 000 строк живет до конца разбора или загрузки: с маленькой кучей замер - в основном сборка мусора
+public class ASTCacheBenchmark {
+    public static void main(String[] args) throws Exception {
+        int lines = Programs.lines(args, 0, 200_000);
+        int rounds = Programs.lines(args, 1, 10);
+        var code = Programs.statements(lines);
+        var directory = Files.createTempDirectory("ezast");
+        var cache = new ASTCache(directory);
+        cache.parse(code);
+        var file = cache.pathOf(code);
+        System.out.printf("%d строк, %d символов, файл кэша %d байт%n", lines, code.length(), Files.size(file));
+
+        var parse = Measure.of(rounds, () -> new Parser(new LexerUnit.Lexer(code)).mainProgram());
+        var key = Measure.of(rounds, () -> ASTCache.key(code));
+        var read = Measure.of(rounds, () -> ASTCache.read(file));
+        var arena = ASTCache.read(file);
+        var tree = Measure.of(rounds, arena::tree);
+        var load = Measure.of(rounds, () -> cache.load(code));
+        System.out.println("лексер и парсер   " + parse);
+        System.out.println("ключ (SHA-256)    " + key);
+        System.out.println("чтение арены      " + read);
+        System.out.println("сборка дерева     " + tree);
+        System.out.println("загрузка из кэша  " + load);
+
+        Files.delete(file);
+        Files.delete(directory);
+    }
+}
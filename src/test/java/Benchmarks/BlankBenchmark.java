@@ -0,0 +1,28 @@
+package Benchmarks;
+
+import Basic.LexerUnit;
+import Basic.LineIndex;
+
+/// Лексер и построение LineIndex на коде из комментариев и на коде с глубокими отступами, МБ/с (текст в UTF-16).
+/// На таком коде почти все время уходит на LexerUnit.Lexer.skipBlank.
+/// Запуск после mvn test-compile:
+///   java -cp target/classes:target/test-classes Benchmarks.BlankBenchmark [строк] [прогонов]
+public class BlankBenchmark {
+    public static void main(String[] args) throws Exception {
+        int lines = Programs.lines(args, 0, 400_000);
+        int rounds = Programs.lines(args, 1, 9);
+        for (var corpus : new String[]{"комментарии", "отступы"}) {
+            var code = corpus.equals("отступы") ? Programs.indented(lines) : Programs.comments(lines);
+            double megabytes = code.length() * 2 / 1e6;
+            var lexer = Measure.of(rounds, () -> new LexerUnit.Lexer(code).analize());
+            var lineIndex = Measure.of(rounds, () -> new LineIndex(code).lineCount());
+            System.out.printf("%s, %.1f МБ%n", corpus, megabytes);
+            print("лексер", megabytes, lexer);
+            print("LineIndex", megabytes, lineIndex);
+        }
+    }
+
+    private static void print(String what, double megabytes, Measure measure) {
+        System.out.printf("  %-10s %8.1f МБ/с  %s%n", what, megabytes / measure.median * 1e3, measure);
+    }
+}
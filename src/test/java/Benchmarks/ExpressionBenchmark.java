@@ -0,0 +1,52 @@
+package Benchmarks;
+
+import Basic.LexerUnit;
+import Basic.Parser;
+import Interpret.ConvertASTToInterpretTreeVisitor;
+import SemanticCheckLogic.CompilationContext;
+import SemanticCheckLogic.SemanticCheck;
+import VirtualMachine.ThreeAddressVisitor;
+
+/// Время компиляции одного длинного выражения: вложенного x + (z * (...)) и цепочки x + z * x + ...
+/// Компиляция - семантическая проверка, перевод в дерево интерпретатора и трехадресный код
+/// для уже разобранного дерева; разбор показан отдельно. Перевод и трехадресный код обходят
+/// выражение рекурсивно, поэтому замер идет в потоке со стеком STACK.
+/// Запуск после mvn test-compile:
+///   java -cp target/classes:target/test-classes Benchmarks.ExpressionBenchmark [прогонов]
+public class ExpressionBenchmark {
+    private static final long STACK = 1L << 30;
+
+    public static void main(String[] args) throws Exception {
+        int rounds = Programs.lines(args, 0, 5);
+        var error = new Exception[1];
+        var thread = new Thread(null, () -> {
+            try {
+                run(rounds);
+            } catch (Exception e) {
+                error[0] = e;
+            }
+        }, "expression", STACK);
+        thread.start();
+        thread.join();
+        if (error[0] != null)
+            throw error[0];
+    }
+
+    private static void run(int rounds) throws Exception {
+        for (var kind : new String[]{"nested", "chain"})
+            for (int size : kind.equals("nested") ? new int[]{2_000, 8_000} : new int[]{5_000, 20_000}) {
+                var code = Programs.expression(kind, size);
+                var tree = new Parser(new LexerUnit.Lexer(code)).mainProgram();
+                var parse = Measure.of(rounds, () -> new Parser(new LexerUnit.Lexer(code)).mainProgram());
+                var compile = Measure.of(rounds, () -> {
+                    var context = new CompilationContext();
+                    new SemanticCheck(context).check(tree);
+                    tree.visit(new ConvertASTToInterpretTreeVisitor(context));
+                    var tac = new ThreeAddressVisitor(context);
+                    tree.visitP(tac);
+                    tac.Stop();
+                });
+                System.out.printf("%-6s %6d  разбор %s  компиляция %s%n", kind, size, parse, compile);
+            }
+    }
+}
@@ -0,0 +1,47 @@
+package Benchmarks;
+
+import Basic.LexerUnit;
+import Basic.Parser;
+
+/// Лексер на коде из одних имен, похожих на ключевые слова.
+/// Для сравнения по тем же словам повторяется прежний способ узнать ключевое слово:
+/// подстрока и два обращения к LexerUnit.KeyWords.
+/// Запуск после mvn test-compile:
+///   java -cp target/classes:target/test-classes Benchmarks.KeywordBenchmark [строк] [прогонов]
+public class KeywordBenchmark {
+    private static int sink;//Чтобы JIT не выбросил поиск
+
+    public static void main(String[] args) throws Exception {
+        int lines = Programs.lines(args, 0, 200_000);
+        int rounds = Programs.lines(args, 1, 7);
+        var code = Programs.identifiers(lines);
+        var lexer = new LexerUnit.Lexer(code);
+        lexer.analize();
+        var tokens = lexer.tokens();
+        int words = 0;
+        for (int i = 0; i < tokens.size(); i++)
+            if (tokens.type(i) == LexerUnit.TokenType.ID)
+                words++;
+        System.out.printf("%.1f МБ, %d токенов, из них %d имен, %d различных%n",
+                code.length() * 2 / 1e6, tokens.size(), words, lexer.names.size());
+
+        var lex = Measure.of(rounds, () -> new LexerUnit.Lexer(code).analize());
+        var parse = Measure.of(rounds, () -> new Parser(new LexerUnit.Lexer(code)).mainProgram());
+        var dictionary = Measure.of(rounds, () -> {
+            int keywords = 0;
+            for (int i = 0; i < tokens.size(); i++) {
+                if (tokens.type(i) != LexerUnit.TokenType.ID)
+                    continue;
+                var word = code.substring(tokens.start(i), tokens.start(i) + tokens.length(i));
+                if (LexerUnit.KeyWords.get(word) != null && LexerUnit.KeyWords.get(word) != LexerUnit.TokenType.ID)
+                    keywords++;
+            }
+            sink += keywords;
+        });
+        System.out.printf("лексер                 %s, %.1f млн имен/с%n", lex, words / lex.median / 1e3);
+        System.out.printf("лексер и парсер        %s%n", parse);
+        System.out.printf("подстрока и KeyWords   %s на все имена%n", dictionary);
+        if (sink == 42)
+            System.out.println();
+    }
+}
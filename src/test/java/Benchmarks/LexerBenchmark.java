@@ -0,0 +1,50 @@
+package Benchmarks;
+
+import Basic.LexerUnit;
+
+import java.util.regex.Pattern;
+
+/// Пропускная способность лексера на латинском и кириллическом коде, МБ/с (текст в UTF-16).
+/// Для сравнения те же символы классифицируются таблицей LexerUnit.isAlphaNumeric
+/// и регулярным выражением, которым лексер проверял буквы раньше.
+/// Запуск после mvn test-compile:
+///   java -cp target/classes:target/test-classes Benchmarks.LexerBenchmark [строк] [прогонов]
+public class LexerBenchmark {
+    private static final Pattern Letter = Pattern.compile("[A-Za-zА-Яа-яёЁ_]");
+
+    private static int sink;//Чтобы JIT не выбросил классификацию
+
+    public static void main(String[] args) throws Exception {
+        int lines = Programs.lines(args, 0, 100_000);
+        int rounds = Programs.lines(args, 1, 7);
+        for (boolean cyrillic : new boolean[]{false, true}) {
+            var code = Programs.corpus(cyrillic, lines);
+            double megabytes = code.length() * 2 / 1e6;
+            var lexer = Measure.of(rounds, () -> new LexerUnit.Lexer(code).analize());
+            var table = Measure.of(rounds, () -> {
+                int letters = 0;
+                for (int i = 0; i < code.length(); i++)
+                    if (LexerUnit.isAlphaNumeric(code.charAt(i)))
+                        letters++;
+                sink += letters;
+            });
+            var regex = Measure.of(1, () -> {
+                int letters = 0;
+                for (int i = 0; i < code.length(); i++)
+                    if (Letter.matcher(String.valueOf(code.charAt(i))).matches())
+                        letters++;
+                sink += letters;
+            });
+            System.out.printf("%s, %.1f МБ%n", cyrillic ? "кириллица" : "латиница", megabytes);
+            print("лексер", megabytes, lexer);
+            print("классификация таблицей", megabytes, table);
+            print("классификация regex", megabytes, regex);
+        }
+        if (sink == 42)
+            System.out.println();
+    }
+
+    private static void print(String what, double megabytes, Measure measure) {
+        System.out.printf("  %-24s %8.1f МБ/с  %s%n", what, megabytes / measure.median * 1e3, measure);
+    }
+}
@@ -0,0 +1,38 @@
+package Benchmarks;
+
+import java.util.Arrays;
+
+/// Замер времени для бенчмарков: первый (холодный) прогон отдельно, затем медиана rounds прогонов
+final class Measure {
+    interface Action {
+        void run() throws Exception;
+    }
+
+    final double cold;//мс
+    final double median;//мс
+
+    private Measure(double cold, double median) {
+        this.cold = cold;
+        this.median = median;
+    }
+
+    static Measure of(int rounds, Action action) throws Exception {
+        double cold = once(action);
+        var times = new double[rounds];
+        for (int i = 0; i < rounds; i++)
+            times[i] = once(action);
+        Arrays.sort(times);
+        return new Measure(cold, times[rounds / 2]);
+    }
+
+    private static double once(Action action) throws Exception {
+        long start = System.nanoTime();
+        action.run();
+        return (System.nanoTime() - start) / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%8.1f ms (первый прогон %.1f ms)", median, cold);
+    }
+}
@@ -0,0 +1,28 @@
+package Benchmarks;
+
+import Basic.LexerUnit;
+import Basic.Parser;
+import ExceptionLogic.CompilerException;
+
+/// Разбор глубоко вложенных операторов и выражений (10 000 уровней и глубже) на стеке потока по умолчанию.
+/// Глубже maxNesting (100 000) парсер сообщает SyntaxException, а не падает со StackOverflowError.
+/// Запуск после mvn test-compile:
+///   java -cp target/classes:target/test-classes Benchmarks.NestingBenchmark [прогонов]
+public class NestingBenchmark {
+    public static void main(String[] args) throws Exception {
+        int rounds = Programs.lines(args, 0, 5);
+        for (var kind : new String[]{"block", "if", "while", "for", "paren", "call", "index", "array"})
+            for (int depth : new int[]{1_000, 10_000, 50_000, 100_000, 200_000}) {
+                var code = Programs.nested(kind, depth);
+                var result = new String[]{"ok"};
+                var parse = Measure.of(rounds, () -> {
+                    try {
+                        new Parser(new LexerUnit.Lexer(code)).mainProgram();
+                    } catch (CompilerException.SyntaxException e) {
+                        result[0] = e.getMessage();
+                    }
+                });
+                System.out.printf("%-6s %7d  %s  %s%n", kind, depth, parse, result[0]);
+            }
+    }
+}
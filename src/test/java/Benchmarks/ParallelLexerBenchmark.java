@@ -0,0 +1,30 @@
+package Benchmarks;
+
+import Basic.LexerUnit;
+
+import java.util.concurrent.ForkJoinPool;
+
+/// Параллельный лексер (analizeParallel) на 1-16 потоках против последовательного.
+/// Ускорение ограничено числом ядер машины: оно печатается в начале.
+/// Запуск после mvn test-compile:
+///   java -cp target/classes:target/test-classes Benchmarks.ParallelLexerBenchmark [строк] [прогонов]
+public class ParallelLexerBenchmark {
+    public static void main(String[] args) throws Exception {
+        int lines = Programs.lines(args, 0, 200_000);
+        int rounds = Programs.lines(args, 1, 7);
+        var code = Programs.corpus(false, lines);
+        System.out.printf("%.1f МБ, ядер: %d%n", code.length() * 2 / 1e6, Runtime.getRuntime().availableProcessors());
+
+        var sequential = Measure.of(rounds, () -> new LexerUnit.Lexer(code).analize());
+        System.out.println("последовательно  " + sequential);
+        for (int threads : new int[]{1, 2, 4, 8, 16}) {
+            var pool = new ForkJoinPool(threads);
+            try {
+                var parallel = Measure.of(rounds, () -> new LexerUnit.Lexer(code).analizeParallel(pool));
+                System.out.printf("потоков %2d       %s, ускорение %.2f%n", threads, parallel, sequential.median / parallel.median);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package Benchmarks;
+
+import Basic.LexerUnit;
+import Basic.Parser;
+
+import java.util.Arrays;
+
+/// Пропускная способность парсера на уже разобранных лексером токенах и вместе с лексером, МБ/с (текст в UTF-16).
+/// Для сравнения проверка каждого токена на операцию сравнения маской long, как в ParserBase.at(long),
+/// и через Arrays.stream(...).anyMatch, как at(TokenType...) проверял токены раньше.
+/// Запуск после mvn test-compile:
+///   java -cp target/classes:target/test-classes Benchmarks.ParseBenchmark [строк] [прогонов]
+public class ParseBenchmark {
+    private static final LexerUnit.TokenType[] Compare = {LexerUnit.TokenType.LESS, LexerUnit.TokenType.GREATER,
+            LexerUnit.TokenType.LESSEQUAL, LexerUnit.TokenType.GREATEREQUAL, LexerUnit.TokenType.EQUAL,
+            LexerUnit.TokenType.NOTEQUAL};
+
+    private static int sink;//Чтобы JIT не выбросил проверки
+
+    public static void main(String[] args) throws Exception {
+        int lines = Programs.lines(args, 0, 200_000);
+        int rounds = Programs.lines(args, 1, 11);
+        var code = Programs.statements(lines);
+        double megabytes = code.length() * 2 / 1e6;
+
+        var lexer = new LexerUnit.Lexer(code);
+        lexer.analize();
+        var tokens = lexer.tokens();
+        long mask = 0;
+        for (var type : Compare)
+            mask |= 1L << type.ordinal();
+        long compare = mask;
+
+        var parse = Measure.of(rounds, () -> new Parser(lexer, tokens, 0).mainProgram());
+        var both = Measure.of(rounds, () -> new Parser(new LexerUnit.Lexer(code)).mainProgram());
+        var bits = Measure.of(rounds, () -> {
+            int found = 0;
+            for (int i = 0; i < tokens.size(); i++)
+                if ((compare & 1L << tokens.type(i).ordinal()) != 0)
+                    found++;
+            sink += found;
+        });
+        var stream = Measure.of(rounds, () -> {
+            int found = 0;
+            for (int i = 0; i < tokens.size(); i++) {
+                var type = tokens.type(i);
+                if (Arrays.stream(Compare).anyMatch(t -> t == type))
+                    found++;
+            }
+            sink += found;
+        });
+        System.out.printf("%d строк, %.1f МБ, %d токенов%n", lines, megabytes, tokens.size());
+        print("парсер", megabytes, parse);
+        print("лексер + парсер", megabytes, both);
+        print("at: маска long", megabytes, bits);
+        print("at: Arrays.stream", megabytes, stream);
+        if (sink == 42)
+            System.out.println();
+    }
+
+    private static void print(String what, double megabytes, Measure measure) {
+        System.out.printf("  %-18s %8.1f МБ/с  %s%n", what, megabytes / measure.median * 1e3, measure);
+    }
+}
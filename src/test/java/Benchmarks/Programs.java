@@ -0,0 +1,110 @@
+package Benchmarks;
+
+/// Тексты программ для бенчмарков и тестов
+public final class Programs {
+    private Programs() { }
+
+    /// Программа из lines строк: присваивания, if, while и длинные числа, по оператору в строке
+    public static String statements(int lines) {
+        var sb = new StringBuilder(lines * 32);
+        for (int i = 0; i < lines / 4; i++) {
+            int n = i % 500;
+            sb.append("x").append(n).append(" = (a + ").append(i).append(") * 2 - b / 3.5;\n")
+                    .append("if x").append(n).append(" > 10 then print(x").append(n).append(") else y += 1;\n")
+                    .append("while y < ").append(i % 7).append(" do y += 1;\n")
+                    .append("переменная = 12345678901234bi;\n");
+        }
+        return sb.append("z = 1").toString();
+    }
+
+    /// Типичный код с комментариями; имена латиницей или кириллицей
+    public static String corpus(boolean cyrillic, int lines) {
+        var sb = new StringBuilder(lines * 64);
+        var name = cyrillic ? "переменная" : "variable";
+        for (int i = 0; i < lines; i++)
+            sb.append("    ").append(name).append(i % 100).append(" = ").append(name).append((i + 1) % 100)
+                    .append(" * 12 + 3.5 - ").append(i).append("; // комментарий ").append(i).append('\n');
+        return sb.toString();
+    }
+
+    /// Код, где на каждый оператор приходятся три строки комментариев
+    public static String comments(int lines) {
+        var sb = new StringBuilder(lines * 64);
+        for (int i = 0; i < lines / 4; i++)
+            sb.append("// Комментарий ").append(i).append(": пересчитать x по формуле из описания\n")
+                    .append("// TODO: проверить границы массива и деление на ноль\n")
+                    .append("// ").append("-".repeat(i % 40)).append('\n')
+                    .append("x = x + ").append(i).append(";\n");
+        return sb.append("z = 1").toString();
+    }
+
+    /// Код с глубокими отступами (от 4 до 40 пробелов) и пустыми строками между операторами
+    public static String indented(int lines) {
+        var sb = new StringBuilder(lines * 40);
+        for (int i = 0; i < lines / 2; i++)
+            sb.append(" ".repeat(4 * (1 + i % 10))).append('x').append(i % 100).append(" = y + ").append(i).append(";\n")
+                    .append("\n");
+        return sb.append("z = 1").toString();
+    }
+
+    /// Код, почти целиком состоящий из имен, похожих на ключевые слова (по длине и первой букве)
+    public static String identifiers(int lines) {
+        var sb = new StringBuilder(lines * 64);
+        for (int i = 0; i < lines; i++)
+            sb.append("iff").append(i % 50).append(" = done").append(i % 37).append(" + thin * fork").append(i % 11)
+                    .append(" - whale * elsa + dx;\n");
+        return sb.append("x = 1").toString();
+    }
+
+    /// Оператор вложенности depth: блоки, if, while, for или выражение из скобок (kind - paren),
+    /// вызовов sqrt (call), индексов (index) или литералов массивов (array)
+    public static String nested(String kind, int depth) {
+        boolean expression = switch (kind) {
+            case "paren", "call", "index", "array" -> true;
+            default -> false;
+        };
+        var sb = new StringBuilder(expression ? "x = " : "");
+        for (int i = 0; i < depth; i++)
+            sb.append(switch (kind) {
+                case "block" -> "{ ";
+                case "if" -> "if a < 1 then ";
+                case "while" -> "while k <= 10 do ";
+                case "for" -> "for (i = 0; i < 3; i += 1) do ";
+                case "call" -> "sqrt(";
+                case "index" -> "a[";
+                case "array" -> "[";
+                default -> "(";
+            });
+        sb.append(expression ? "1" : "x = 1");
+        for (int i = 0; i < depth; i++)
+            sb.append(switch (kind) {
+                case "block" -> " }";
+                case "if" -> " else y = 2";
+                case "paren", "call" -> ")";
+                case "index", "array" -> "]";
+                default -> "";
+            });
+        return sb.toString();
+    }
+
+    /// Одно длинное выражение смешанных типов: вложенное x + (z * (x + ...)) глубины size (kind - nested)
+    /// или цепочка x + z * x + z * ... из size слагаемых (kind - chain)
+    public static String expression(String kind, int size) {
+        var sb = new StringBuilder("x = 1; z = 2.5;\ny = ");
+        if (kind.equals("chain")) {
+            sb.append('x');
+            for (int i = 1; i < size; i++)
+                sb.append(i % 2 == 1 ? " + z * x" : " - x");
+        }
+        else {
+            for (int i = 0; i < size; i++)
+                sb.append(i % 2 == 0 ? "x + (" : "z * (");
+            sb.append('1').append(")".repeat(size));
+        }
+        return sb.toString();
+    }
+
+    public static int lines(String[] args, int index, int otherwise) {
+        return args.length > index ? Integer.parseInt(args[index]) : otherwise;
+    }
+}